@@ -0,0 +1,45 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class writes the files which are kept between runs, such as graph snapshots and leg caches, so that a run which
+ * stops halfway never leaves a broken file behind for the next run to read.
+ */
+final class AtomicFiles {
+    private AtomicFiles() {
+    }
+
+    /**
+     * This method writes the rest of the buffer to the given file. The bytes are written and flushed to a temporary
+     * file in the same directory first, which is then moved into place in one step, replacing any file already there.
+     * The temporary file is deleted if any step fails.
+     *
+     * @param path   File to write.
+     * @param buffer Bytes to write, from its position to its limit.
+     * @throws IOException If the file cannot be written or moved into place.
+     */
+    static void writeAtomically(Path path, ByteBuffer buffer) throws IOException {
+        var directory = path.toAbsolutePath().getParent();
+        var temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Once the move has succeeded there is nothing left to delete.
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -86,8 +86,9 @@ public class Client {
         if (endPoint.equals("orders")) {
             endPoint += "/" + date;
         }
-        if (!endPoint.startsWith("/")) {
-            endPoint = "/" + endPoint;
+        // The base URL already ends with a slash, and a second one would make the path start with "//".
+        if (endPoint.startsWith("/")) {
+            endPoint = endPoint.substring(1);
         }
         URL url = null;
         try {
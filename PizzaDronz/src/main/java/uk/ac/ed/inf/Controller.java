@@ -1,7 +1,13 @@
 package uk.ac.ed.inf;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 import static java.util.List.of;
 
@@ -16,9 +22,57 @@ import static java.util.List.of;
  */
 
 public class Controller {
+    // File in which the visibility graph is saved between runs.
+    private static final String GRAPH_SNAPSHOT = "visibility-graph.bin";
+    // File in which the legs of the flights are cached between runs, and the largest number of legs it holds.
+    private static final String LEG_CACHE = "leg-cache.bin";
+    private static final int MAX_CACHED_LEGS = 4096;
+    // Whether the flight paths are first planned on the lattice of moves, see LatticePlanner, rather than only steered
+    // along the smoothed path of nodes. It saves very few moves for the time it takes, so it is off unless the system
+    // property pizzadronz.lattice is set to true.
+    private final boolean planOnLattice;
+    // Whether the details of each flight path are printed, which is off unless the system property pizzadronz.verbose is
+    // set to true.
+    private final boolean verbose;
+    // Whether the log of the day's moves is kept outside the heap, which is off unless the system property
+    // pizzadronz.offHeapMoveLog is set to true.
+    private final boolean offHeapMoveLog;
+    // Whether the day's moves are also saved to a binary flight path file, see FlightpathFile, which is off unless the
+    // system property pizzadronz.binaryFlightpath is set to true.
+    private final boolean binaryFlightpath;
+    // Decimal places the GeoJSON coordinates are rounded to, and whether points in the middle of straight lines are left
+    // out, to make the GeoJSON file smaller for the map viewer. They are set by the system properties
+    // pizzadronz.geojsonDecimals and pizzadronz.geojsonDropCollinear, and by default the file is written in full.
+    private final int geoJsonDecimals;
+    private final boolean geoJsonDropCollinear;
+    // Directory in which the output files and the files kept between runs are written.
+    private final Path outputDirectory;
     // Number of delivered orders for a given day.
     private int deliveredOrders;
 
+    /**
+     * This constructor creates a Controller which writes its files into the working directory.
+     */
+    public Controller() {
+        this(Path.of(""));
+    }
+
+    /**
+     * This constructor creates a Controller which writes its files into the given directory. The settings kept in
+     * system properties are read here, so each Controller runs with the properties set when it was created.
+     *
+     * @param outputDirectory Directory for the output files and the files kept between runs.
+     */
+    Controller(Path outputDirectory) {
+        this.outputDirectory = outputDirectory;
+        planOnLattice = Boolean.getBoolean("pizzadronz.lattice");
+        verbose = Boolean.getBoolean("pizzadronz.verbose");
+        offHeapMoveLog = Boolean.getBoolean("pizzadronz.offHeapMoveLog");
+        binaryFlightpath = Boolean.getBoolean("pizzadronz.binaryFlightpath");
+        geoJsonDecimals = Integer.getInteger("pizzadronz.geojsonDecimals", JsonWriter.FULL_PRECISION);
+        geoJsonDropCollinear = Boolean.getBoolean("pizzadronz.geojsonDropCollinear");
+    }
+
     /**
      * This method checks that there is at least one order per day.
      * If empty, it prints out an error message. However, this does not termiante the program early.
@@ -60,6 +114,19 @@ public class Controller {
         }
     }
 
+    /**
+     * This method checks that the GeoJSON coordinates can be rounded to the number of decimal places asked for, before
+     * any of the day's work is done.
+     */
+    private void checkGeoJsonDecimals() {
+        if (geoJsonDecimals != JsonWriter.FULL_PRECISION &&
+                (geoJsonDecimals < 0 || geoJsonDecimals > JsonWriter.MAX_DECIMALS)) {
+            System.err.println("The GeoJSON coordinates can be rounded to between 0 and " + JsonWriter.MAX_DECIMALS +
+                    " decimal places.");
+            System.exit(1);
+        }
+    }
+
     /**
      * This method checks that there is a central area registered in the system.
      *
@@ -73,6 +140,116 @@ public class Controller {
     }
 
 
+    /**
+     * This method calculates the flight path from Appleton Tower to the given restaurant and back. The flight path is
+     * steered along the smoothed path of nodes of the graph, unless there is a lattice planner and it finds a flight
+     * path with the fewest moves. The flight path becomes a Route, which travelPresetRoute gives to every order from
+     * that restaurant.
+     *
+     * @param restaurant     Restaurant to calculate the flight path for, which has a path of nodes.
+     * @param appletonCoord  Coordinates of Appleton Tower.
+     * @param nodePath       Path of nodes from Appleton Tower to the restaurant.
+     * @param pathFinder     PathFinder that turns plans and paths into moves.
+     * @param latticePlanner Lattice planner for the map, or null to only steer.
+     * @param pathSmoother   PathSmoother for the no-fly zones.
+     * @param noFlyZoneIndex Spatial index over the no-fly zones.
+     * @return The flight path to the restaurant.
+     */
+    private Route planRestaurantFlight(Restaurant restaurant, LngLat appletonCoord, List<LngLat> nodePath,
+                                       PathFinder pathFinder, LatticePlanner latticePlanner,
+                                       PathSmoother pathSmoother, NoFlyZoneIndex noFlyZoneIndex) {
+        var moves = latticePlanner == null ? null :
+                pathFinder.travel(appletonCoord, restaurant.coord(), "", latticePlanner);
+        if (moves == null) {
+            var smoothedPath = pathSmoother.smooth(appletonCoord, nodePath);
+            if (verbose) {
+                System.out.println("Smoothing the path to " + restaurant.name() + " saved " +
+                        smoothedPath.getMovesSaved() + " moves.");
+            }
+            moves = pathFinder.travel(appletonCoord, smoothedPath.nodePath(), "", noFlyZoneIndex);
+        }
+        return Route.createRoute(moves);
+    }
+
+
+    /**
+     * This class calculates the flight paths to the restaurants lazily, in the order in which the drone visits them.
+     * When the flight path to a restaurant is asked for, the flight paths to the next few restaurants are started as
+     * well, on a pool of at most one thread per processor, so they are usually ready by the time the drone gets to
+     * them. Once the battery runs out, no more than that window of flight paths has been calculated in vain.
+     */
+    private static final class FlightPlanner implements AutoCloseable {
+        private final List<Restaurant> restaurants;
+        private final Map<Restaurant, Integer> positions = new HashMap<>();
+        private final Function<Restaurant, Route> planner;
+        private final ExecutorService executor;
+        // Number of restaurants after the one asked for whose flight paths are started as well.
+        private final int lookAhead;
+        private final Map<Restaurant, Future<Route>> flights = new HashMap<>();
+        private int started;
+
+        /**
+         * @param restaurants Restaurants in the order in which the drone visits them.
+         * @param planner     Function which calculates the flight path to a restaurant, on any thread.
+         */
+        private FlightPlanner(List<Restaurant> restaurants, Function<Restaurant, Route> planner) {
+            this.restaurants = restaurants;
+            this.planner = planner;
+            for (int i = 0; i < restaurants.size(); i++) {
+                positions.put(restaurants.get(i), i);
+            }
+            lookAhead = Runtime.getRuntime().availableProcessors();
+            executor = Executors.newFixedThreadPool(lookAhead);
+        }
+
+        /**
+         * This method waits for the flight path to the given restaurant, after starting the flight paths to it and to
+         * the restaurants in the window after it.
+         *
+         * @param restaurant One of the restaurants of the planner.
+         * @return The flight path to the restaurant.
+         * @throws ExecutionException   If calculating the flight path failed.
+         * @throws InterruptedException If the thread was interrupted while waiting.
+         */
+        private Route getRoute(Restaurant restaurant) throws ExecutionException, InterruptedException {
+            var end = Math.min(restaurants.size(), positions.get(restaurant) + 1 + lookAhead);
+            while (started < end) {
+                var next = restaurants.get(started++);
+                flights.put(next, executor.submit(() -> planner.apply(next)));
+            }
+            return flights.get(restaurant).get();
+        }
+
+        /**
+         * @return Number of restaurants whose flight paths were started.
+         */
+        private int getStarted() {
+            return started;
+        }
+
+        /**
+         * This method waits for every flight path that was started, including those the drone never got to, before
+         * shutting down the pool. The flight paths add to the leg cache and to the counters of the PathFinder, so they
+         * must all be finished before those are printed or saved, or they would depend on the timing of the threads.
+         *
+         * @throws InterruptedException If the thread was interrupted while waiting.
+         */
+        @Override
+        public void close() throws InterruptedException {
+            try {
+                for (var flight : flights.values()) {
+                    try {
+                        flight.get();
+                    } catch (ExecutionException e) {
+                        // Reported by getRoute if the drone needed the flight path, and otherwise not needed.
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
     /**
      * This method controls the flow of the program.
      * It is split into four main parts:
@@ -86,6 +263,7 @@ public class Controller {
     public void startApp(String[] args) {
         var start = System.currentTimeMillis();
         checkProgramArguments(args);
+        checkGeoJsonDecimals();
 
         // Part 1 - Initialise all the relevant data from REST server
 
@@ -102,8 +280,6 @@ public class Controller {
         var noFlyZones = of(c.getResponse("noFlyZones", Polygon[].class));
 
         // Temporary data structures
-        Map<Restaurant, List<Move>> restaurantToMoves = new HashMap<>();
-        List<Move> allPaths = new ArrayList<>();
         Map<Restaurant, List<LngLat>> restaurantToNodes = new HashMap<>();
 
 
@@ -123,22 +299,34 @@ public class Controller {
 
         // Part 3.1 - Building graph and drone
 
-        var drone = Drone.createDrone(appletonCoord);
-        var graph = Graph.createGraph(appletonCoord, noFlyZones,
+        var moveLog = offHeapMoveLog ? MoveLog.createOffHeapMoveLog() : MoveLog.createMoveLog();
+        var drone = Drone.createDrone(appletonCoord, moveLog);
+        var noFlyZoneIndex = NoFlyZoneIndex.createNoFlyZoneIndex(noFlyZones);
+        var graph = GraphSnapshot.loadOrBuild(outputDirectory.resolve(GRAPH_SNAPSHOT), appletonCoord, noFlyZoneIndex,
                 allRestaurants.stream().map(Restaurant::coord).toList());
+        var geometryChecks = noFlyZones.stream().mapToLong(nfz -> nfz.getInsideChecks() + nfz.getLineChecks()).sum();
+        var geometryRejects = noFlyZones.stream().mapToLong(nfz -> nfz.getInsideRejects() + nfz.getLineRejects()).sum();
+        System.out.println("No-fly zone bounding boxes answered " + geometryRejects + " out of " + geometryChecks +
+                " geometry tests while building the graph.");
 
 
         // Part 3.2 - Simulating moves required and reordering the orders based on number of moves.
 
+        // Lists of nodes approximating the shortest path from Appleton Tower to every restaurant, found in one search.
+        var restaurantPaths = graph.getPaths(drone.getCurrCoord(),
+                allRestaurants.stream().map(Restaurant::coord).toList());
+        for (var restaurant : allRestaurants) {
+            var nodePath = restaurantPaths.get(restaurant.coord());
+            if (nodePath != null) {
+                restaurantToNodes.put(restaurant, nodePath);
+            }
+        }
+
         for (var validatedOrder : validatedOrders) {
             var restaurant = validatedOrder.getRestaurant();
             if (OrderChecker.checkValid(validatedOrder)) {
-                // List of nodes approximating the shortest path that the drone should visit.
-                var nodePath = restaurantToNodes.getOrDefault(restaurant,
-                        graph.getPath(drone.getCurrCoord(), restaurant.coord()));
-                if (nodePath != null) {
+                if (restaurantToNodes.containsKey(restaurant)) {
                     validatedOrder.setDistance(drone.getCurrCoord());
-                    restaurantToNodes.putIfAbsent(restaurant, nodePath);
                 } else {
                     // If there is no valid set of nodes from Appleton Tower to the restaurant, make it unable to travel.
                     validatedOrder.setDistance(null);
@@ -154,49 +342,88 @@ public class Controller {
 
         // Part 3.3 - Moving the drone and delivering the orders
 
-        var pathFinder = new PathFinder();
-        for (var validatedOrder : validatedOrders) {
-            if (validatedOrder.getDistance() != Double.POSITIVE_INFINITY) { // For any valid orders:
-                var orderNo = validatedOrder.getOrder().orderNo();
-                List<Move> moves;
-
-                if (restaurantToMoves.get(validatedOrder.getRestaurant()) != null) { // If there is a cached flight-path
-                    var presetRoute = restaurantToMoves.get(validatedOrder.getRestaurant());
-                    moves = pathFinder.travelPresetRoute(orderNo, presetRoute);
-                } else { // Otherwise, calculate the path
-                    var nodePath = restaurantToNodes.get(validatedOrder.getRestaurant());
-                    moves = pathFinder.travel(drone.getCurrCoord(), nodePath, orderNo, noFlyZones);
-                    restaurantToMoves.putIfAbsent(validatedOrder.getRestaurant(), moves); // Only need to put once
-                }
-                if (drone.hasEnoughBattery(moves.size())) {
-                    drone.followPath(orderNo, moves);
+        var legCache = LegCache.loadOrCreate(outputDirectory.resolve(LEG_CACHE), MAX_CACHED_LEGS);
+        var pathFinder = new PathFinder(legCache);
+        var latticePlanner = planOnLattice ? LatticePlanner.createLatticePlanner(graph) : null;
+        var pathSmoother = PathSmoother.createPathSmoother(noFlyZoneIndex);
 
-                    allPaths.addAll(drone.getPath()); // Add to list of all flight paths that the drone took that day.
-                    OrderChecker.setAsDelivered(validatedOrder);
-                    deliveredOrders++;
-                    drone.reset(appletonCoord); // Reset drone's location to Appleton Tower.
-                } else {
-                    // Break early as drone will not have enough battery to deliver any subsequent orders.
-                    // Change this to 'continue' if using other heuristics not based on distance/number of moves.
-                    break;
+        // Every order from the same restaurant has the same flight path, so each one is calculated once, when the drone
+        // first needs it, along with the next few restaurants.
+        Set<Restaurant> restaurantsToVisit = new LinkedHashSet<>();
+        for (var validatedOrder : validatedOrders) {
+            if (validatedOrder.getDistance() != Double.POSITIVE_INFINITY) {
+                restaurantsToVisit.add(validatedOrder.getRestaurant());
+            }
+        }
+        var startFlightCalc = System.currentTimeMillis();
+        try (var flightPlanner = new FlightPlanner(new ArrayList<>(restaurantsToVisit),
+                restaurant -> planRestaurantFlight(restaurant, appletonCoord, restaurantToNodes.get(restaurant),
+                        pathFinder, latticePlanner, pathSmoother, noFlyZoneIndex))) {
+            for (var validatedOrder : validatedOrders) {
+                if (validatedOrder.getDistance() != Double.POSITIVE_INFINITY) { // For any valid orders:
+                    var orderNo = validatedOrder.getOrder().orderNo();
+                    var presetRoute = flightPlanner.getRoute(validatedOrder.getRestaurant());
+                    var flight = pathFinder.travelPresetRoute(orderNo, presetRoute); // Shares the route's moves.
+                    if (drone.hasEnoughBattery(flight.size())) {
+                        drone.followFlight(flight); // Appends the moves to the log of all moves the drone made.
+                        OrderChecker.setAsDelivered(validatedOrder);
+                        deliveredOrders++;
+                        drone.reset(appletonCoord); // Reset drone's location to Appleton Tower.
+                    } else {
+                        // Break early as drone will not have enough battery to deliver any subsequent orders.
+                        // Change this to 'continue' if using other heuristics not based on distance/number of moves.
+                        break;
+                    }
                 }
             }
+            System.out.println("Delivering the orders took: " + (System.currentTimeMillis() - startFlightCalc) +
+                    "ms, with flight paths calculated to " + flightPlanner.getStarted() + " of " +
+                    restaurantsToVisit.size() + " restaurants.");
+        } catch (ExecutionException e) {
+            System.err.println("Unable to calculate a flight path: " + e.getCause());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while calculating the flight paths.");
+            System.exit(1);
+        }
+        if (pathFinder.getEvaluatedCandidates() > 0) {
+            System.out.println("Steering evaluated " + String.format("%.2f", pathFinder.getCandidatesPerMove()) +
+                    " candidate moves per move.");
+        }
+        System.out.println("The move log holds " + moveLog.size() + " moves in " + moveLog.getColumnBytes() / 1024 +
+                " kB of columns.");
+        System.out.println("The leg cache had " + legCache.getHits() + " hits and " + legCache.getMisses() +
+                " misses, and evicted " + legCache.getEvictions() + " legs.");
+        try {
+            legCache.write(outputDirectory.resolve(LEG_CACHE));
+        } catch (IOException e) {
+            System.err.println("Unable to write the leg cache " + LEG_CACHE + ": " + e.getMessage());
         }
 
 
         // Part 4 - Start file writing program
 
         
-        JsonWriter jsonWriter = new JsonWriter(date);
+        JsonWriter jsonWriter = new JsonWriter(date, outputDirectory);
         try {
-            jsonWriter.writeFlightpath(allPaths);
-            jsonWriter.writeGeoJson(allPaths);
+            jsonWriter.writeFlightpath(moveLog);
+            jsonWriter.writeGeoJson(moveLog, geoJsonDecimals, geoJsonDropCollinear);
             jsonWriter.writeDeliveries(validatedOrders);
         } catch (IOException e) {
             System.err.println("The named file exists but is a directory rather than a regular file, does not exist " +
                     "but cannot be created, or cannot be opened for any other reason.");
             System.exit(1);
         }
+        if (binaryFlightpath) {
+            var binaryFlightpath = "flightpath-" + date + ".bin";
+            try {
+                FlightpathFile.write(moveLog, outputDirectory.resolve(binaryFlightpath));
+            } catch (IOException e) {
+                System.err.println("Unable to write the flight path " + binaryFlightpath + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
 
 
         var end = System.currentTimeMillis();
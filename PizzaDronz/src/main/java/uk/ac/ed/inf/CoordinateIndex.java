@@ -0,0 +1,149 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * This class maps coordinates to dense integer ids in O(1). It is an open-addressing hash map with linear probing
+ * which is keyed by the raw long bits of the longitude and latitude, so that looking up a LngLat does not allocate or
+ * unbox anything.
+ * Two coordinates map to the same id exactly when they are equal according to LngLat.equals.
+ */
+public class CoordinateIndex {
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] lngKeys;
+    private long[] latKeys;
+    // Values are non-negative ids, EMPTY marks a free slot.
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public CoordinateIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * This constructor creates an index which can hold the expected number of coordinates without resizing.
+     *
+     * @param expectedSize Expected number of coordinates.
+     */
+    public CoordinateIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * This method returns the smallest power of two which keeps the load factor at or below 1/2.
+     */
+    private static int tableSizeFor(int expectedSize) {
+        var capacity = MIN_CAPACITY;
+        while (capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        lngKeys = new long[capacity];
+        latKeys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /**
+     * This method mixes the two keys into a well-distributed slot index (the finaliser of MurmurHash3).
+     */
+    private int slot(long lngBits, long latBits) {
+        long h = lngBits * 0x9E3779B97F4A7C15L ^ latBits;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * This method returns the id stored for the given raw keys.
+     *
+     * @param lngBits Raw bits of the longitude, or any other long key.
+     * @param latBits Raw bits of the latitude, or any other long key.
+     * @return The stored id, or -1 if there is none.
+     */
+    public int get(long lngBits, long latBits) {
+        var i = slot(lngBits, latBits);
+        while (values[i] != EMPTY) {
+            if (lngKeys[i] == lngBits && latKeys[i] == latBits) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * This method returns the id of the given coordinates.
+     *
+     * @param lngLat Coordinates to look up.
+     * @return The stored id, or -1 if the coordinates are not in the index.
+     */
+    public int get(LngLat lngLat) {
+        return get(Double.doubleToLongBits(lngLat.lng()), Double.doubleToLongBits(lngLat.lat()));
+    }
+
+    /**
+     * This method stores an id for the given raw keys, replacing any id that was already stored for them.
+     *
+     * @param lngBits Raw bits of the longitude, or any other long key.
+     * @param latBits Raw bits of the latitude, or any other long key.
+     * @param id      Non-negative id to store.
+     */
+    public void put(long lngBits, long latBits, int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Ids must be non-negative: " + id);
+        }
+        if (2 * (size + 1) > values.length) {
+            resize();
+        }
+        var i = slot(lngBits, latBits);
+        while (values[i] != EMPTY) {
+            if (lngKeys[i] == lngBits && latKeys[i] == latBits) {
+                values[i] = id;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        lngKeys[i] = lngBits;
+        latKeys[i] = latBits;
+        values[i] = id;
+        size++;
+    }
+
+    /**
+     * This method stores an id for the given coordinates.
+     *
+     * @param lngLat Coordinates to store.
+     * @param id     Non-negative id to store.
+     */
+    public void put(LngLat lngLat, int id) {
+        put(Double.doubleToLongBits(lngLat.lng()), Double.doubleToLongBits(lngLat.lat()), id);
+    }
+
+    private void resize() {
+        var oldLngKeys = lngKeys;
+        var oldLatKeys = latKeys;
+        var oldValues = values;
+        allocate(oldValues.length << 1);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != EMPTY) {
+                put(oldLngKeys[i], oldLatKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -55,12 +55,12 @@ public enum Direction {
     }
 
     /**
-     * This method returns the direction that is opposite to the given direction value.
+     * This method returns the direction that is opposite to the given direction value, from a table worked out once.
      *
      * @param d The direction for which we want the opposite of.
      * @return The opposite direction.
      */
     public static Direction reverseDirection(Direction d) {
-        return getDirection((d.angle + 180) % 360);
+        return MoveKernel.getOpposite(d);
     }
 }
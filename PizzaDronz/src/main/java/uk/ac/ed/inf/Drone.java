@@ -14,13 +14,15 @@ public class Drone {
     private LngLat currCoord;
     private String orderNo;
     private List<Move> path;
+    // Every move the drone has made since it was created, across all orders.
+    private final MoveLog flightLog;
 
-    protected Drone(LngLat currCoord) {
+    protected Drone(LngLat currCoord, MoveLog flightLog) {
         battery = MAX_BATTERY;
         this.currCoord = currCoord;
         orderNo = "no-order";
         path = new ArrayList<>();
-
+        this.flightLog = flightLog;
     }
 
     /**
@@ -29,11 +31,23 @@ public class Drone {
      * @return A new Drone object.
      */
     public static Drone createDrone(LngLat currCoord) {
-        return new Drone(currCoord);
+        return new Drone(currCoord, MoveLog.createMoveLog());
+    }
+
+    /**
+     * Static factory method to create new Drone objects which record their moves in the given log.
+     *
+     * @param currCoord Starting coordinates.
+     * @param flightLog Log to append every move of the drone to.
+     * @return A new Drone object.
+     */
+    public static Drone createDrone(LngLat currCoord, MoveLog flightLog) {
+        return new Drone(currCoord, flightLog);
     }
 
     /**
      * This method resets the drone's list of path as well as resetting its position to the Appleton Tower.
+     * The flight log is kept.
      *
      * @param appletonCoord LngLat coordinates of Appleton Tower.
      */
@@ -44,8 +58,8 @@ public class Drone {
     }
 
     /**
-     * This method has the drone follow a computed flight path, appending the moves to the drone's path and updating
-     * its battery and current coordinates..
+     * This method has the drone follow a computed flight path, appending the moves to the drone's path and flight log
+     * and updating its battery and current coordinates..
      *
      * @param orderNo Order number of the current delivery.
      * @param moves   List of moves to deliver the order.
@@ -54,11 +68,27 @@ public class Drone {
         this.orderNo = orderNo;
         for (var move : moves) {
             path.add(move);
+            flightLog.append(move);
             currCoord = move.coordinates().nextPosition(move.direction());
             this.battery -= MOVE_COST;
         }
     }
 
+    /**
+     * This method has the drone fly the route of an order, appending its moves to the flight log and updating its
+     * battery and current coordinates. Unlike followPath, no Move objects are added to the drone's path.
+     *
+     * @param flight Flight path of the current delivery.
+     */
+    public void followFlight(Flight flight) {
+        orderNo = flight.orderNo();
+        flightLog.append(flight);
+        if (flight.size() > 0) {
+            currCoord = flight.route().getEnd();
+        }
+        battery -= flight.size() * MOVE_COST;
+    }
+
     /**
      * This method checks if the drone has enough battery to carry out a flight path.
      *
@@ -77,6 +107,10 @@ public class Drone {
         return path;
     }
 
+    public MoveLog getFlightLog() {
+        return flightLog;
+    }
+
     @Override
     public String toString() {
         return "Drone{" +
@@ -84,6 +118,7 @@ public class Drone {
                 ", currCoord=" + currCoord +
                 ", orderNo='" + orderNo + '\'' +
                 ", path=" + path +
+                ", flightLog=" + flightLog +
                 '}';
     }
 }
@@ -0,0 +1,35 @@
+package uk.ac.ed.inf;
+
+/**
+ * This record is the flight path of a single order: a shared Route, together with the order number of the delivery and
+ * how long it had elapsed since the start of the path calculation when the route was given to the order (In
+ * nanoseconds). Every move of the flight has this order number and tick, so they are stored once rather than per move.
+ */
+public record Flight(Route route, String orderNo, long tick) {
+    /**
+     * @return Number of moves in the flight, including hovers.
+     */
+    public int size() {
+        return route.size();
+    }
+
+    /**
+     * This method creates a Move object for one move of the flight, for callers which need one. The writers read the
+     * route directly instead.
+     *
+     * @param move Index of the move.
+     * @return A new Move object.
+     */
+    public Move getMove(int move) {
+        return new Move(route.getCoordinates(move), route.getDirection(move), orderNo, tick);
+    }
+
+    @Override
+    public String toString() {
+        return "Flight{" +
+                "route=" + route +
+                ", order=" + orderNo +
+                ", tick=" + tick +
+                '}';
+    }
+}
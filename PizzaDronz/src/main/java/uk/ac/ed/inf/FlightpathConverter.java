@@ -0,0 +1,69 @@
+package uk.ac.ed.inf;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This class is a command line tool which converts a binary flight path file, see FlightpathFile, into the JSON flight
+ * path and the GeoJSON drone path that JsonWriter writes for a day, so that tools which read those files can still be
+ * used on days which were only saved in the binary format.
+ */
+public class FlightpathConverter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private FlightpathConverter() {
+    }
+
+    /**
+     * This method converts the given flight path file.
+     *
+     * @param flightpath Binary flight path file to read.
+     * @param json       File to write the JSON flight path to.
+     * @param geoJson    File to write the GeoJSON drone path to, or null to skip it.
+     * @return Number of moves converted, or -1 if the binary file is missing or is not a valid flight path file.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static int convert(Path flightpath, Path json, Path geoJson) throws IOException {
+        var moves = FlightpathFile.read(flightpath);
+        if (moves == null) {
+            return -1;
+        }
+        try (var out = new BufferedOutputStream(Files.newOutputStream(json), BUFFER_SIZE)) {
+            JsonWriter.writeFlightpath(moves, out);
+        }
+        if (geoJson != null) {
+            try (var out = new BufferedOutputStream(Files.newOutputStream(geoJson), BUFFER_SIZE)) {
+                JsonWriter.writeGeoJson(moves, out);
+            }
+        }
+        return moves.size();
+    }
+
+    /**
+     * Main method for converting a flight path file.
+     *
+     * @param args
+     *      args[0] = Binary flight path file
+     *      args[1] = JSON flight path file to write
+     *      args[2] = GeoJSON drone path file to write (Optional)
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: FlightpathConverter <flightpath.bin> <flightpath.json> [drone.geojson]");
+            System.exit(1);
+        }
+        try {
+            var converted = convert(Path.of(args[0]), Path.of(args[1]), args.length > 2 ? Path.of(args[2]) : null);
+            if (converted < 0) {
+                System.err.println("Unable to read the flight path " + args[0] + ".");
+                System.exit(1);
+            }
+            System.out.println("Converted " + converted + " moves from " + args[0] + ".");
+        } catch (IOException e) {
+            System.err.println("Unable to convert the flight path: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class saves the moves the drone made in a day to a compact binary flight path file and reads them back through
+ * a memory-mapped FileChannel, so that any move of the day can be read without parsing the moves before it.
+ * A flight path file is laid out as follows, in little-endian byte order:
+ * a header of magic number, format version, number of moves and number of order numbers, followed by one fixed-width
+ * record per move of longitude, latitude, direction ordinal (-1 for a hover), order index and tick, followed by the
+ * table of order numbers, each as its length and its UTF-8 bytes. A move takes 29 bytes.
+ * FlightpathConverter turns a flight path file back into the JSON and GeoJSON files written by JsonWriter.
+ */
+public class FlightpathFile implements MoveHistory {
+    // "PDFP", for PizzaDronz flight path.
+    private static final int MAGIC = 0x50444650;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = Integer.BYTES * 4;
+    private static final int RECORD_LENGTH = Double.BYTES * 2 + 1 + Integer.BYTES + Long.BYTES;
+    // Offsets of the fields within a record.
+    private static final int LAT = Double.BYTES;
+    private static final int DIRECTION = Double.BYTES * 2;
+    private static final int ORDER = DIRECTION + 1;
+    private static final int TICK = ORDER + Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte HOVER = -1;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final ByteBuffer records;
+    private final int size;
+    private final List<String> orderNumbers;
+
+    private FlightpathFile(ByteBuffer records, int size, List<String> orderNumbers) {
+        this.records = records;
+        this.size = size;
+        this.orderNumbers = orderNumbers;
+    }
+
+    /**
+     * This method saves the moves to the given file. The records are written to the channel through a buffer of fixed
+     * size, so writing a long day of moves takes no more memory than a short one.
+     *
+     * @param moves Moves that the drone took, in order.
+     * @param path  File to write the flight path to.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(MoveHistory moves, Path path) throws IOException {
+        var orders = moves.getOrderNumbers();
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(moves.size()).putInt(orders.size());
+            for (int i = 0; i < moves.size(); i++) {
+                if (buffer.remaining() < RECORD_LENGTH) {
+                    drain(buffer, channel);
+                }
+                var direction = moves.getDirection(i);
+                buffer.putDouble(moves.getLng(i)).putDouble(moves.getLat(i))
+                        .put(direction == null ? HOVER : (byte) direction.ordinal())
+                        .putInt(moves.getOrderIndex(i)).putLong(moves.getTick(i));
+            }
+            for (var orderNo : orders) {
+                var bytes = orderNo.getBytes(StandardCharsets.UTF_8);
+                var entry = ByteBuffer.allocate(Integer.BYTES + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+                entry.putInt(bytes.length).put(bytes);
+                if (buffer.remaining() < entry.capacity()) {
+                    drain(buffer, channel);
+                }
+                if (buffer.remaining() < entry.capacity()) {
+                    drain(entry, channel); // Only an order number longer than the buffer gets here.
+                } else {
+                    buffer.put(entry.flip());
+                }
+            }
+            drain(buffer, channel);
+        }
+    }
+
+    /**
+     * This method writes out everything put into the buffer so far and clears it.
+     */
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * This method maps the given flight path file into memory. The order numbers are read straight away, but the moves
+     * are only read from the mapping when they are asked for.
+     *
+     * @param path File to read the flight path from.
+     * @return A FlightpathFile object for the moves in the file, or null if there is no file or it is not a valid
+     * flight path file.
+     * @throws IOException If the file exists but cannot be read.
+     */
+    public static FlightpathFile read(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE) {
+                System.err.println("The flight path " + path + " is not a valid flight path file.");
+                return null;
+            }
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                System.err.println("The flight path " + path + " is not a valid flight path file.");
+                return null;
+            }
+            var size = buffer.getInt();
+            var orderCount = buffer.getInt();
+            var tableStart = HEADER_LENGTH + (long) RECORD_LENGTH * size;
+            if (size < 0 || orderCount < 0 || tableStart > channel.size()) {
+                System.err.println("The flight path " + path + " is not a valid flight path file.");
+                return null;
+            }
+            var records = buffer.slice(HEADER_LENGTH, (int) tableStart - HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            var orderNumbers = readOrderNumbers(buffer.position((int) tableStart), orderCount);
+            if (orderNumbers == null || !isValid(records, size, orderCount)) {
+                System.err.println("The flight path " + path + " is not a valid flight path file.");
+                return null;
+            }
+            return new FlightpathFile(records, size, orderNumbers);
+        }
+    }
+
+    /**
+     * This method reads the table of order numbers, which must take up exactly the rest of the file.
+     */
+    private static List<String> readOrderNumbers(ByteBuffer buffer, int orderCount) {
+        List<String> orderNumbers = new ArrayList<>(Math.min(orderCount, buffer.remaining() / Integer.BYTES));
+        for (int i = 0; i < orderCount; i++) {
+            if (buffer.remaining() < Integer.BYTES) {
+                return null;
+            }
+            var length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                return null;
+            }
+            var bytes = new byte[length];
+            buffer.get(bytes);
+            orderNumbers.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return buffer.hasRemaining() ? null : List.copyOf(orderNumbers);
+    }
+
+    /**
+     * This method checks the direction and order index of every record, so that a damaged file cannot make a read go
+     * out of bounds.
+     */
+    private static boolean isValid(ByteBuffer records, int size, int orderCount) {
+        for (int i = 0; i < size; i++) {
+            var direction = records.get(i * RECORD_LENGTH + DIRECTION);
+            var order = records.getInt(i * RECORD_LENGTH + ORDER);
+            if (direction < HOVER || direction >= DIRECTIONS.length || order < 0 || order >= orderCount) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double getLng(int move) {
+        return records.getDouble(offset(move));
+    }
+
+    @Override
+    public double getLat(int move) {
+        return records.getDouble(offset(move) + LAT);
+    }
+
+    @Override
+    public Direction getDirection(int move) {
+        var ordinal = records.get(offset(move) + DIRECTION);
+        return ordinal == HOVER ? null : DIRECTIONS[ordinal];
+    }
+
+    @Override
+    public int getOrderIndex(int move) {
+        return records.getInt(offset(move) + ORDER);
+    }
+
+    @Override
+    public String getOrderNo(int move) {
+        return orderNumbers.get(getOrderIndex(move));
+    }
+
+    @Override
+    public long getTick(int move) {
+        return records.getLong(offset(move) + TICK);
+    }
+
+    @Override
+    public List<String> getOrderNumbers() {
+        return orderNumbers;
+    }
+
+    private int offset(int move) {
+        if (move < 0 || move >= size) {
+            throw new IndexOutOfBoundsException("Move " + move + " is out of bounds for a flight path of " + size +
+                    " moves.");
+        }
+        return move * RECORD_LENGTH;
+    }
+
+    @Override
+    public String toString() {
+        return "FlightpathFile{" +
+                "moves=" + size +
+                ", orders=" + orderNumbers.size() +
+                '}';
+    }
+}
@@ -1,10 +1,19 @@
 package uk.ac.ed.inf;
 
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.stream.IntStream;
 
 /**
  * This class deals with initialising the visibility graph of the map and contains the Node and Edge inner class
  * which are connected to form the overall graph.
+ * A Graph is immutable once it has been created. The state of each search lives in a SearchContext, so many threads
+ * can query the same Graph at once without locking.
+ * A Graph can either keep every no-fly zone vertex and every visible edge, or be reduced to the convex vertices and the
+ * edges which are tangent to the no-fly zones at both ends, which are the only ones that shortest paths use.
+ * The edges are stored in compressed sparse row form: the edges of node u are the entries offsets[u] to
+ * offsets[u + 1] - 1 of targets and weights. The Edge records of getNodeToEdges are only created when they are asked for.
  */
 public class Graph {
 
@@ -27,48 +36,27 @@ public class Graph {
 
 
     /**
-     * This class contains information about the various heuristics used in the search algorithms, as well as its
-     * coordinates in LngLat form and a prev attribute which references the previous node that the algorithm had to take
-     * to get to this node.
+     * This class represents a vertex of the visibility graph. It contains its coordinates in LngLat form and a dense id
+     * which is used to index the primitive cost arrays of the search algorithm.
      */
-    public static class Node implements Comparable<Node> {
+    public static class Node {
 
-        private Node prev;
-        private Double f;
-        // Cost to get to this node from the starting node.
-        private Double g;
-        // Estimated cost to get to the end node from this node.
-        private Double h;
+        private final int id;
         private final LngLat coord;
 
-        public Node(LngLat lngLat) {
-            prev = null;
-            f = Double.POSITIVE_INFINITY;
-            g = Double.POSITIVE_INFINITY;
-            h = 0.0;
+        public Node(int id, LngLat lngLat) {
+            this.id = id;
             coord = lngLat;
         }
 
-        @Override
-        public int compareTo(Node o) {
-            return Double.compare(f, o.f);
-        }
-
-        /**
-         * This method calculates the f value of a node given g and h by taking the weighted sum.
-         * Reference: <a href="http://theory.stanford.edu/~amitp/GameProgramming/Variations.html">...</a>
-         *
-         * @param g Cost of getting from the start node to current node.
-         * @param h Estimated cost of getting from the current node to the end node.
-         */
-        private void setF(Double g, Double h) {
-            f = g + WEIGHT * h;
-        }
-
         public Double calculateHeuristic(Node target) {
             return coord.distanceTo(target.coord);
         }
 
+        public int getId() {
+            return id;
+        }
+
         public LngLat getCoord() {
             return coord;
         }
@@ -76,10 +64,7 @@ public class Graph {
         @Override
         public String toString() {
             return "Node{" +
-                    "prev=" + prev +
-                    ", f=" + f +
-                    ", g=" + g +
-                    ", h=" + h +
+                    "id=" + id +
                     ", coord=" + coord +
                     '}';
         }
@@ -101,21 +86,143 @@ public class Graph {
     }
 
 
+    /**
+     * This interface decides whether the edge between two nodes is part of the visibility graph.
+     * Implementations must be safe to call from many threads at once.
+     */
+    private interface VisibilityTest {
+        /**
+         * @param start One end of the edge.
+         * @param end   Other end of the edge.
+         * @param tests Counter which is incremented whenever the edge has to be tested against no-fly zones.
+         * @return Boolean value of whether the edge is visible.
+         */
+        boolean isVisible(LngLat start, LngLat end, LongAdder tests);
+    }
+
+
+    /**
+     * This enum selects which nodes and edges the visibility graph keeps.
+     * FULL keeps every vertex of every no-fly zone and every edge between two nodes which can see each other.
+     * REDUCED drops the reflex vertices of the no-fly zones, and the edges which are not tangent to a no-fly zone at a
+     * vertex they end at. A shortest path only bends around convex vertices and leaves them along tangents, so both
+     * modes give paths of the same length, but the reduced graph is much smaller on detailed polygons.
+     */
+    public enum Mode {
+        FULL,
+        REDUCED
+    }
+
+
+    // Version of the rules which decide the nodes and edges of a graph. It is part of the hash of a GraphSnapshot, so it
+    // must be bumped whenever isVisible, isBlockedBy or the choice of nodes changes, or stale snapshots would be loaded.
+    // Version 2 tests the sides of a no-fly zone with Polygon.isSide.
+    public static final int RULES_VERSION = 2;
+
     private static final Double WEIGHT = 1.0;
 
-    private Map<Node, List<Edge>> nodeToEdges;
+    private final LngLat appletonCoord;
+    private final NoFlyZoneIndex noFlyZones;
+    private final List<LngLat> restaurantCoords;
+    private final Mode mode;
+    // For each no-fly zone vertex which is not Appleton Tower or a restaurant, the vertices before and after it in each
+    // no-fly zone it belongs to. Only filled in for a reduced graph.
+    private final Map<LngLat, List<LngLat[]>> corners;
+    // Compressed sparse row adjacency, indexed by node id, with the targets of each node in increasing order.
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+    // Edge records of every node, created from the arrays above the first time getNodeToEdges is called.
+    private volatile Map<Node, List<Edge>> nodeToEdges;
+    // Nodes in order of their id.
+    private final List<Node> nodes;
+    // Maps the coordinates of every node to its id.
+    private final CoordinateIndex coordToId;
+    // Search context reused by the queries of each thread that does not provide its own.
+    private final ThreadLocal<SearchContext> searchContexts;
+    // Number of node pairs whose visibility had to be tested geometrically while building this graph.
+    private final long visibilityTests;
 
     /**
      * This method initialises all the vertices and edges of the graph.
      *
      * @param appletonCoord    Appleton Tower coordinates in LngLat format.
-     * @param noFlyZones       List of no-fly zones.
+     * @param noFlyZones       Spatial index over the no-fly zones.
      * @param restaurantCoords List of restaurants.
+     * @param mode             Whether to keep every node and edge or only the ones that shortest paths can use.
      */
-    private Graph(LngLat appletonCoord, List<Polygon> noFlyZones, List<LngLat> restaurantCoords) {
-        initNodes(appletonCoord, noFlyZones, restaurantCoords);
-        initEdges();
-        initVisibilityGraph(noFlyZones);
+    private Graph(LngLat appletonCoord, NoFlyZoneIndex noFlyZones, List<LngLat> restaurantCoords, Mode mode) {
+        this(appletonCoord, noFlyZones, restaurantCoords, mode, (start, end, tests) -> {
+            tests.increment();
+            return isVisible(start, end, noFlyZones);
+        });
+    }
+
+    /**
+     * This method initialises all the vertices of the graph, and its edges using the given visibility test.
+     * In a reduced graph, only the pairs which are tangent at both ends are given to the visibility test.
+     *
+     * @param appletonCoord    Appleton Tower coordinates in LngLat format.
+     * @param noFlyZones       Spatial index over the no-fly zones.
+     * @param restaurantCoords List of restaurants.
+     * @param mode             Whether to keep every node and edge or only the ones that shortest paths can use.
+     * @param visibility       Decides whether two nodes can see each other.
+     */
+    private Graph(LngLat appletonCoord, NoFlyZoneIndex noFlyZones, List<LngLat> restaurantCoords, Mode mode,
+                  VisibilityTest visibility) {
+        nodes = new ArrayList<>();
+        coordToId = new CoordinateIndex();
+        this.mode = mode;
+        initNodes(appletonCoord, noFlyZones.getNoFlyZones(), restaurantCoords);
+        corners = mode == Mode.REDUCED ?
+                initCorners(appletonCoord, noFlyZones.getNoFlyZones(), restaurantCoords) : Map.of();
+        this.appletonCoord = appletonCoord;
+        this.noFlyZones = noFlyZones;
+        this.restaurantCoords = List.copyOf(restaurantCoords);
+        var tests = new LongAdder();
+        var visible = initVisibilityGraph((start, end) ->
+                isTangent(start, end) && visibility.isVisible(start, end, tests));
+        offsets = initOffsets(visible);
+        targets = new int[offsets[nodes.size()]];
+        weights = new double[offsets[nodes.size()]];
+        initEdges(visible);
+        visibilityTests = tests.sum();
+        var size = nodes.size();
+        searchContexts = ThreadLocal.withInitial(() -> new SearchContext(size));
+    }
+
+    /**
+     * This method initialises a graph whose nodes and edges have already been worked out, e.g. by an earlier run which
+     * saved them in a GraphSnapshot. No visibility tests are needed.
+     *
+     * @param appletonCoord    Appleton Tower coordinates in LngLat format.
+     * @param noFlyZones       Spatial index over the no-fly zones.
+     * @param restaurantCoords List of restaurants.
+     * @param mode             Whether the nodes and edges are those of a full or a reduced graph.
+     * @param nodeCoords       Coordinates of each node, in order of id.
+     * @param offsets          Where the edges of each node start in targets and weights.
+     * @param targets          Id of the node each edge leads to.
+     * @param weights          Weight of each edge.
+     */
+    private Graph(LngLat appletonCoord, NoFlyZoneIndex noFlyZones, List<LngLat> restaurantCoords, Mode mode,
+                  LngLat[] nodeCoords, int[] offsets, int[] targets, double[] weights) {
+        nodes = new ArrayList<>(nodeCoords.length);
+        coordToId = new CoordinateIndex();
+        this.mode = mode;
+        for (var c : nodeCoords) {
+            addNode(c);
+        }
+        corners = mode == Mode.REDUCED ?
+                initCorners(appletonCoord, noFlyZones.getNoFlyZones(), restaurantCoords) : Map.of();
+        this.appletonCoord = appletonCoord;
+        this.noFlyZones = noFlyZones;
+        this.restaurantCoords = List.copyOf(restaurantCoords);
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        visibilityTests = 0;
+        var size = nodes.size();
+        searchContexts = ThreadLocal.withInitial(() -> new SearchContext(size));
     }
 
     /**
@@ -127,216 +234,821 @@ public class Graph {
      * @return A new Graph object.
      */
     public static Graph createGraph(LngLat appletonCoord, List<Polygon> noFlyZones, List<LngLat> restaurantCoords) {
-        return new Graph(appletonCoord, noFlyZones, restaurantCoords);
+        return createGraph(appletonCoord, NoFlyZoneIndex.createNoFlyZoneIndex(noFlyZones), restaurantCoords);
+    }
+
+    /**
+     * This is a static factory method which creates a new Graph object from an existing index of the no-fly zones.
+     *
+     * @param appletonCoord    Coordinates of Appleton Tower
+     * @param noFlyZones       Spatial index over the no-fly zones.
+     * @param restaurantCoords List of restaurants' coordinates.
+     * @return A new Graph object.
+     */
+    public static Graph createGraph(LngLat appletonCoord, NoFlyZoneIndex noFlyZones, List<LngLat> restaurantCoords) {
+        return new Graph(appletonCoord, noFlyZones, restaurantCoords, Mode.FULL);
+    }
+
+    /**
+     * This is a static factory method which creates a new reduced Graph object, which only keeps the convex vertices
+     * of the no-fly zones and the edges which are tangent to the no-fly zones at both ends.
+     *
+     * @param appletonCoord    Coordinates of Appleton Tower
+     * @param noFlyZones       Spatial index over the no-fly zones.
+     * @param restaurantCoords List of restaurants' coordinates.
+     * @return A new Graph object whose paths are as short as those of the full graph.
+     */
+    public static Graph createReducedGraph(LngLat appletonCoord, NoFlyZoneIndex noFlyZones,
+                                           List<LngLat> restaurantCoords) {
+        return new Graph(appletonCoord, noFlyZones, restaurantCoords, Mode.REDUCED);
+    }
+
+    /**
+     * This is a static factory method which recreates a Graph object from its nodes and compressed edges, as they were
+     * saved by GraphSnapshot. The arrays are used as they are, so they must not be modified afterwards.
+     *
+     * @param appletonCoord    Coordinates of Appleton Tower
+     * @param noFlyZones       Spatial index over the no-fly zones the graph was built for.
+     * @param restaurantCoords List of restaurants' coordinates the graph was built for.
+     * @param mode             Whether the nodes and edges are those of a full or a reduced graph.
+     * @param nodeCoords       Coordinates of each node, in order of id, without duplicates.
+     * @param offsets          Array of n + 1 offsets, where the edges of node u are at offsets[u] to offsets[u + 1] - 1.
+     * @param targets          Id of the node each edge leads to.
+     * @param weights          Weight of each edge.
+     * @return A new Graph object.
+     */
+    static Graph createGraphFromEdges(LngLat appletonCoord, NoFlyZoneIndex noFlyZones, List<LngLat> restaurantCoords,
+                                      Mode mode, LngLat[] nodeCoords, int[] offsets, int[] targets, double[] weights) {
+        return new Graph(appletonCoord, noFlyZones, restaurantCoords, mode, nodeCoords, offsets, targets, weights);
+    }
+
+    /**
+     * This method returns a new graph which also avoids the given no-fly zone, e.g. a temporary one for an event.
+     * Adding a no-fly zone can only hide edges, so only the edges which were visible and pass near the new no-fly zone
+     * are tested against it, and only the edges of its new vertices are tested against every no-fly zone.
+     * This graph is not modified, so queries which are running on it are not affected.
+     *
+     * @param nfz No-fly zone to add.
+     * @return A new Graph object which is the same as building the graph from scratch with the extra no-fly zone.
+     */
+    public Graph withNoFlyZone(Polygon nfz) {
+        List<Polygon> zones = new ArrayList<>(noFlyZones.getNoFlyZones());
+        zones.add(nfz);
+        var newNoFlyZones = NoFlyZoneIndex.createNoFlyZoneIndex(zones);
+        var visible = getVisibility();
+        return new Graph(appletonCoord, newNoFlyZones, restaurantCoords, mode, (start, end, tests) -> {
+            if (!hasTested(start, end)) { // One of the nodes is a new vertex.
+                tests.increment();
+                return isVisible(start, end, newNoFlyZones);
+            }
+            if (!visible[coordToId.get(start)].get(coordToId.get(end))) {
+                return false;
+            }
+            if (!isNear(nfz, start, end)) {
+                return true;
+            }
+            tests.increment();
+            return !isBlockedBy(nfz, start, end);
+        });
+    }
+
+    /**
+     * This method returns a new graph without the given no-fly zone, e.g. once a temporary one has expired.
+     * Removing a no-fly zone can only reveal edges, so only the edges which were hidden by this no-fly zone are tested
+     * again against the remaining no-fly zones.
+     * This graph is not modified, so queries which are running on it are not affected.
+     *
+     * @param nfz No-fly zone to remove.
+     * @return A new Graph object which is the same as building the graph from scratch without the no-fly zone, or this
+     * graph if it does not avoid the no-fly zone.
+     */
+    public Graph withoutNoFlyZone(Polygon nfz) {
+        List<Polygon> zones = new ArrayList<>(noFlyZones.getNoFlyZones());
+        if (!zones.remove(nfz)) {
+            System.err.println("The graph does not contain the no-fly zone: " + nfz);
+            return this;
+        }
+        var newNoFlyZones = NoFlyZoneIndex.createNoFlyZoneIndex(zones);
+        var visible = getVisibility();
+        return new Graph(appletonCoord, newNoFlyZones, restaurantCoords, mode, (start, end, tests) -> {
+            if (!hasTested(start, end)) { // One of the nodes was a reflex vertex of the removed no-fly zone.
+                tests.increment();
+                return isVisible(start, end, newNoFlyZones);
+            }
+            if (visible[coordToId.get(start)].get(coordToId.get(end))) {
+                return true;
+            }
+            if (!isNear(nfz, start, end)) {
+                return false;
+            }
+            tests.increment();
+            if (!isBlockedBy(nfz, start, end)) { // Another no-fly zone hides the edge.
+                return false;
+            }
+            tests.increment();
+            return isVisible(start, end, newNoFlyZones);
+        });
+    }
+
+    /**
+     * This method returns a new graph which also contains the given restaurant. Only the edges of the new restaurant
+     * are tested against the no-fly zones.
+     *
+     * @param restaurantCoord Coordinates of the restaurant to add.
+     * @return A new Graph object which is the same as building the graph from scratch with the extra restaurant.
+     */
+    public Graph withRestaurant(LngLat restaurantCoord) {
+        List<LngLat> restaurants = new ArrayList<>(restaurantCoords);
+        restaurants.add(restaurantCoord);
+        return withRestaurants(restaurants);
+    }
+
+    /**
+     * This method returns a new graph without the given restaurant. No edges need to be tested again.
+     *
+     * @param restaurantCoord Coordinates of the restaurant to remove.
+     * @return A new Graph object which is the same as building the graph from scratch without the restaurant, or this
+     * graph if it does not contain the restaurant or it is the only restaurant.
+     */
+    public Graph withoutRestaurant(LngLat restaurantCoord) {
+        List<LngLat> restaurants = new ArrayList<>(restaurantCoords);
+        if (!restaurants.remove(restaurantCoord)) {
+            System.err.println("The graph does not contain the restaurant: " + restaurantCoord);
+            return this;
+        }
+        if (restaurants.isEmpty()) {
+            System.err.println("There must be at least one restaurant.");
+            return this;
+        }
+        return withRestaurants(restaurants);
+    }
+
+    /**
+     * This method returns a new graph with a different list of restaurants and the same no-fly zones, reusing the
+     * visibility of every edge between two nodes which are already in this graph.
+     *
+     * @param restaurants New list of restaurants' coordinates.
+     * @return A new Graph object.
+     */
+    private Graph withRestaurants(List<LngLat> restaurants) {
+        var visible = getVisibility();
+        return new Graph(appletonCoord, noFlyZones, restaurants, mode, (start, end, tests) -> {
+            if (!hasTested(start, end)) {
+                tests.increment();
+                return isVisible(start, end, noFlyZones);
+            }
+            return visible[coordToId.get(start)].get(coordToId.get(end));
+        });
+    }
+
+    /**
+     * This method checks whether this graph knows if the two coordinates can see each other, i.e. both of them are
+     * nodes of this graph and the pair was not skipped for not being tangent to a no-fly zone. Only then can the edges
+     * of this graph be reused by an updated graph.
+     *
+     * @param start One end of the edge.
+     * @param end   Other end of the edge.
+     * @return True if the visibility of the pair can be read from the edges of this graph.
+     */
+    private boolean hasTested(LngLat start, LngLat end) {
+        return coordToId.get(start) != -1 && coordToId.get(end) != -1 && isTangent(start, end);
+    }
+
+    /**
+     * This method turns the edges of this graph back into the set of visible nodes of each node.
+     *
+     * @return For each node id u, the set of ids v which are visible from u.
+     */
+    private BitSet[] getVisibility() {
+        var visible = new BitSet[nodes.size()];
+        for (int u = 0; u < nodes.size(); u++) {
+            visible[u] = new BitSet(nodes.size());
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                visible[u].set(targets[i]);
+            }
+        }
+        return visible;
     }
 
     /**
      * This method goes through the list of restaurant coordinates, no-fly zones and the appleton coordinates
-     * to initialise them as nodes.
+     * to initialise them as nodes. A reduced graph skips the vertices which are not convex in every no-fly zone they
+     * belong to, unless they are also Appleton Tower or a restaurant.
      *
      * @param appletonCoord    Appleton Tower coordinates in LngLat format.
      * @param noFlyZones       List of no-fly zones.
      * @param restaurantCoords List of restaurants' coordinates.
      */
     private void initNodes(LngLat appletonCoord, List<Polygon> noFlyZones, List<LngLat> restaurantCoords) {
-        nodeToEdges = new HashMap<>();
         if (appletonCoord == null) {
             System.err.println("The Appleton Tower coordinates must not be null.");
             System.exit(1);
         }
-        nodeToEdges.putIfAbsent(new Node(appletonCoord), new ArrayList<>());
+        addNode(appletonCoord);
         if (restaurantCoords == null || restaurantCoords.size() == 0) {
             System.err.println("There must be at least one restaurant.");
             System.exit(1);
         }
         for (var r : restaurantCoords) {
-            nodeToEdges.putIfAbsent(new Node(r), new ArrayList<>());
+            addNode(r);
+        }
+        Set<LngLat> reflexVertices = new HashSet<>();
+        if (mode == Mode.REDUCED) {
+            for (var nfz : noFlyZones) {
+                for (int i = 0; i < nfz.coordinates().size(); i++) {
+                    if (!nfz.isConvexVertex(i)) {
+                        reflexVertices.add(nfz.coordinates().get(i));
+                    }
+                }
+            }
         }
         for (var nfz : noFlyZones) {
             for (var c : nfz.coordinates()) { // For each vertex of a no-fly zone.
-                nodeToEdges.putIfAbsent(new Node(c), new ArrayList<>());
+                if (!reflexVertices.contains(c)) {
+                    addNode(c);
+                }
             }
         }
     }
 
-
     /**
-     * This method initialises the edges of a node that is not a no-fly zone by connecting it to all the other nodes.
-     * Therefore, if there are n nodes, each node will have O(n - 1) edges.
+     * This method records the neighbouring vertices of every no-fly zone vertex which is a node of the graph, so that
+     * isTangent can check edges against them. Appleton Tower and the restaurants are left out, since paths start and
+     * end there rather than bending around them.
+     *
+     * @param appletonCoord    Appleton Tower coordinates in LngLat format.
+     * @param noFlyZones       List of no-fly zones.
+     * @param restaurantCoords List of restaurants' coordinates.
+     * @return For each such vertex, the vertices before and after it in each no-fly zone it belongs to.
      */
-    private void initEdges() {
-        for (var u : nodeToEdges.keySet()) {
-            for (var v : nodeToEdges.keySet()) {
-                if (!u.equals(v)) {
-                    var edge = new Edge(u, v, u.coord.distanceTo(v.coord));
-                    nodeToEdges.get(u).add(edge);
+    private Map<LngLat, List<LngLat[]>> initCorners(LngLat appletonCoord, List<Polygon> noFlyZones,
+                                                    List<LngLat> restaurantCoords) {
+        Set<LngLat> terminals = new HashSet<>(restaurantCoords);
+        terminals.add(appletonCoord);
+        Map<LngLat, List<LngLat[]>> result = new HashMap<>();
+        for (var nfz : noFlyZones) {
+            var coordinates = nfz.coordinates();
+            var n = coordinates.size();
+            for (int i = 0; i < n; i++) {
+                var c = coordinates.get(i);
+                if (coordToId.get(c) != -1 && !terminals.contains(c)) {
+                    result.computeIfAbsent(c, k -> new ArrayList<>())
+                            .add(new LngLat[]{coordinates.get((i + n - 1) % n), coordinates.get((i + 1) % n)});
                 }
             }
         }
+        return result;
+    }
+
+    /**
+     * This method adds a node for the given coordinates, giving it the next free id, unless a node with the same
+     * coordinates already exists.
+     *
+     * @param coord Coordinates of the new node.
+     */
+    private void addNode(LngLat coord) {
+        if (coordToId.get(coord) == -1) {
+            var node = new Node(nodes.size(), coord);
+            coordToId.put(coord, node.id);
+            nodes.add(node);
+        }
+    }
+
+
+    /**
+     * This method works out which pairs of nodes can see each other, i.e. which edges do not cross a no-fly zone.
+     * The visibility test gives the same answer in both directions, so each unordered pair {u, v} is only tested once,
+     * from the node with the smaller id. The rows are tested in parallel on the common fork-join pool.
+     *
+     * @param visibility Decides whether two nodes can see each other. It must be safe to call from many threads.
+     * @return For each node id u, the set of ids v > u which are visible from u.
+     */
+    private BitSet[] initVisibilityGraph(BiPredicate<LngLat, LngLat> visibility) {
+        var n = nodes.size();
+        var visible = new BitSet[n];
+        IntStream.range(0, n).parallel().forEach(u -> {
+            var row = new BitSet(n);
+            var start = nodes.get(u).coord;
+            for (int v = u + 1; v < n; v++) {
+                if (visibility.test(start, nodes.get(v).coord)) {
+                    row.set(v);
+                }
+            }
+            visible[u] = row;
+        });
+        return visible;
+    }
+
+    /**
+     * This method checks whether the edge start->end could be part of a shortest path as far as its two ends are
+     * concerned. A shortest path that reaches a no-fly zone vertex bends around it, so it leaves along a line which
+     * keeps both neighbouring vertices of the no-fly zone on the same side. Any other edge at that vertex either cuts
+     * into the no-fly zone or can be shortened, so a reduced graph leaves it out. A full graph keeps every edge.
+     *
+     * @param start One end of the edge.
+     * @param end   Other end of the edge.
+     * @return True if the edge is tangent to the no-fly zones at each end which is a no-fly zone vertex.
+     */
+    private boolean isTangent(LngLat start, LngLat end) {
+        return isTangentAt(start, end) && isTangentAt(end, start);
     }
 
+    /**
+     * This method checks whether the edge other->vertex keeps the neighbours of vertex on the same side in every
+     * no-fly zone that vertex belongs to. Neighbours on the line itself count as being on either side.
+     *
+     * @param vertex End of the edge to check.
+     * @param other  Other end of the edge.
+     * @return True if the edge is tangent at vertex, or vertex is not a no-fly zone vertex.
+     */
+    private boolean isTangentAt(LngLat vertex, LngLat other) {
+        var neighbours = corners.get(vertex);
+        if (neighbours == null) {
+            return true;
+        }
+        for (var pair : neighbours) {
+            var side1 = Polygon.calcCollinear(other, vertex, pair[0]);
+            var side2 = Polygon.calcCollinear(other, vertex, pair[1]);
+            if (side1 != 0 && side2 != 0 && side1 != side2) {
+                return false;
+            }
+        }
+        return true;
+    }
 
     /**
-     * This method goes through all the edges of each node, and checks whether it intersects any no-fly zone boundaries.
-     * If it does, then the weight of that edge will be deleted so that the algorithm does not travel along it.
+     * This method checks whether the edge start->end intersects any no-fly zone boundaries. If it does, the edge is
+     * not part of the visibility graph so that the algorithm does not travel along it.
      * Reference: <a href="http://www.science.smith.edu/~istreinu/Teaching/Courses/274/Spring98/Projects/Philip/fp/visibility.htm">...</a>
      * To check for the edge case outlined in the report, I check whether any one of the three points along the edge
      * is inside a no-fly zone.
      * q1 refers to the point resting at 1/4 of the distance of the full line.
      * q2 refers to the point resting at 1/2 of the distance of the full line. (Thus the middle of the line).
      * q3 refers to the point resting at 3/4 of the distance of the full line.
+     * Swapping start and end gives the same result: the boundary test is symmetric, and createLngLatInBetween only
+     * depends on the sum of the two points.
+     * The boundary test only looks at the no-fly zone edges near the line, using the spatial index.
+     * An edge along a side of a no-fly zone is never hidden by that no-fly zone, since travelling along the boundary is
+     * fine, see Polygon.isSide. This holds in both modes, and a reduced graph relies on it: a shortest path which has
+     * to go around a hidden side bends at vertices where it is not tangent, which a reduced graph leaves out.
      *
-     * @param noFlyZones List of no-fly zones to avoid.
+     * @param start      One end of the edge.
+     * @param end        Other end of the edge.
+     * @param noFlyZones Spatial index over the no-fly zones to avoid.
+     * @return Boolean value of whether the edge is visible.
      */
-    private void initVisibilityGraph(List<Polygon> noFlyZones) {
+    static boolean isVisible(LngLat start, LngLat end, NoFlyZoneIndex noFlyZones) {
         if (noFlyZones.isEmpty()) { // End early if there are no no-fly zones to save computational resources.
-            return;
-        }
-        for (var node : nodeToEdges.keySet()) {
-            List<Edge> visibleEdges = new ArrayList<>();
-            for (var edge : nodeToEdges.get(node)) {
-                boolean isVisible = true;
-                var start = edge.startNode().coord;
-                var end = edge.endNode().coord;
-                var q1 = LngLat.createLngLatInBetween(start, end, 0.25); // 1/4 of the way
-                var q2 = LngLat.createLngLatInBetween(start, end, 0.5); // 1/2 of the way
-                var q3 = LngLat.createLngLatInBetween(start, end, 0.75); // 3/4 of the way
-                for (var nfz : noFlyZones) {
-                    if (nfz.isLineIntersectingNfz(start, end) ||
-                            nfz.isInsidePolygon(q1, true) ||
-                            nfz.isInsidePolygon(q2, true) ||
-                            nfz.isInsidePolygon(q3, true)) {
-                        isVisible = false;
-                        break;
-                    }
-                }
-                if (isVisible) {
-                    visibleEdges.add(edge);
-                }
+            return true;
+        }
+        if (noFlyZones.isLineIntersectingNfz(start, end)) {
+            return false;
+        }
+        var q1 = LngLat.createLngLatInBetween(start, end, 0.25); // 1/4 of the way
+        var q2 = LngLat.createLngLatInBetween(start, end, 0.5); // 1/2 of the way
+        var q3 = LngLat.createLngLatInBetween(start, end, 0.75); // 3/4 of the way
+        for (var nfz : noFlyZones.getNoFlyZones()) {
+            if ((nfz.isInsidePolygon(q1, true) ||
+                    nfz.isInsidePolygon(q2, true) ||
+                    nfz.isInsidePolygon(q3, true)) && !nfz.isSide(start, end)) {
+                return false;
             }
-            nodeToEdges.replace(node, visibleEdges);
         }
+        return true;
     }
 
     /**
-     * This method initialises the heuristic attribute 'h' for all nodes.
+     * This method checks whether a single no-fly zone hides the edge start->end, using the same tests as isVisible.
+     *
+     * @param nfz   No-fly zone to test against.
+     * @param start One end of the edge.
+     * @param end   Other end of the edge.
+     * @return True if the edge crosses the no-fly zone or one of its three points is inside it, unless the edge is one
+     * of its sides.
+     */
+    private static boolean isBlockedBy(Polygon nfz, LngLat start, LngLat end) {
+        return nfz.isLineIntersectingNfz(start, end) ||
+                (nfz.isInsidePolygon(LngLat.createLngLatInBetween(start, end, 0.25), true) ||
+                        nfz.isInsidePolygon(LngLat.createLngLatInBetween(start, end, 0.5), true) ||
+                        nfz.isInsidePolygon(LngLat.createLngLatInBetween(start, end, 0.75), true)) &&
+                        !nfz.isSide(start, end);
+    }
+
+    /**
+     * This method checks whether the edge start->end or one of the three points tested by isVisible lies within the
+     * bounding box of the no-fly zone. If not, the no-fly zone cannot hide the edge.
+     *
+     * @param nfz   No-fly zone to test against.
+     * @param start One end of the edge.
+     * @param end   Other end of the edge.
+     * @return False if the no-fly zone certainly does not affect the edge.
+     */
+    private static boolean isNear(Polygon nfz, LngLat start, LngLat end) {
+        return nfz.isOverlappingBoundingBox(start, end) ||
+                nfz.isInsideBoundingBox(LngLat.createLngLatInBetween(start, end, 0.25)) ||
+                nfz.isInsideBoundingBox(LngLat.createLngLatInBetween(start, end, 0.75));
+    }
+
+    /**
+     * This method counts the directed edges of each node and works out where the edges of each node start in the
+     * compressed sparse row arrays.
+     *
+     * @param visible For each node id u, the set of ids v > u which are visible from u.
+     * @return Array of n + 1 offsets, where the edges of node u are at offsets[u] to offsets[u + 1] - 1.
+     */
+    private int[] initOffsets(BitSet[] visible) {
+        var n = nodes.size();
+        var result = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            for (int v = visible[u].nextSetBit(0); v >= 0; v = visible[u].nextSetBit(v + 1)) {
+                result[u + 1]++;
+                result[v + 1]++;
+            }
+        }
+        for (int u = 0; u < n; u++) {
+            result[u + 1] += result[u];
+        }
+        return result;
+    }
+
+    /**
+     * This method turns the visible pairs into the directed edges of each node. The rows are visited in order of id, so
+     * the edges of a node end up in order of the id of the node they lead to: first the pairs found in the rows of
+     * smaller ids, then its own row. The adjacency is therefore the same no matter how the pairs were tested.
+     *
+     * @param visible For each node id u, the set of ids v > u which are visible from u.
+     */
+    private void initEdges(BitSet[] visible) {
+        var next = Arrays.copyOf(offsets, nodes.size());
+        for (int u = 0; u < nodes.size(); u++) {
+            var coord = nodes.get(u).coord;
+            for (int v = visible[u].nextSetBit(0); v >= 0; v = visible[u].nextSetBit(v + 1)) {
+                var weight = coord.distanceTo(nodes.get(v).coord);
+                targets[next[u]] = v;
+                weights[next[u]++] = weight;
+                targets[next[v]] = u;
+                weights[next[v]++] = weight;
+            }
+        }
+    }
+
+    /**
+     * This method creates a new search context which can be used to query this graph.
+     * Each thread that queries the graph at the same time needs its own context.
+     *
+     * @return A new SearchContext sized for this graph.
+     */
+    public SearchContext newSearchContext() {
+        return new SearchContext(nodes.size());
+    }
+
+    /**
+     * This method returns the heuristic value 'h' of a node, calculating it the first time the node is reached.
      * It currently uses the Euclidean straight-line distance as it is an admissible heuristic.
      *
+     * @param context     Search context of the current query.
+     * @param id          Id of the node.
      * @param destination Coordinates of the destination.
+     * @return Estimated cost of getting from the node to the destination.
+     */
+    private double heuristic(SearchContext context, int id, LngLat destination) {
+        if (!context.hasH(id)) {
+            context.setH(id, nodes.get(id).coord.distanceTo(destination));
+        }
+        return context.getH(id);
+    }
+
+    /**
+     * This method calculates the f value of a node given g and h by taking the weighted sum.
+     * Reference: <a href="http://theory.stanford.edu/~amitp/GameProgramming/Variations.html">...</a>
+     *
+     * @param g Cost of getting from the start node to current node.
+     * @param h Estimated cost of getting from the current node to the end node.
+     * @return The f value of the node.
      */
-    private void initHeuristic(LngLat destination) {
-        nodeToEdges.keySet().forEach(n -> n.h = n.coord.distanceTo(destination));
+    private static double calculateF(double g, double h) {
+        return g + WEIGHT * h;
     }
 
     /**
      * This method is an A-Star search algorithm that approximates the shortest path between start and finish.
      * This method turns into Dijkstra's algorithm when the heuristic h is set to 0 for all nodes.
+     * The open set is an indexed binary heap, so checking whether a node is in it is O(1) and lowering its f value is
+     * O(log n), and the costs are kept in primitive arrays indexed by node id.
      *
-     * @param start Starting node.
-     * @param end   Destination node.
-     * @return The final node which has pointers to previous nodes that the drone needs to visit first.
+     * @param context Search context which holds the state of this query. It is reset before the search.
+     * @param start   Id of the starting node.
+     * @param end     Id of the destination node.
+     * @return The id of the final node, from which prev leads back to the start, or -1 if there is no path.
      * Reference: <a href="https://en.wikipedia.org/wiki/A*_search_algorithm">...</a>
      */
-    private Node AStar(Node start, Node end) {
-        resetCost();
-        initHeuristic(end.coord);
-        PriorityQueue<Node> visited = new PriorityQueue<>();
-        start.g = 0.0;
-        start.setF(start.g, start.h);
-        visited.add(start);
-
-        while (!visited.isEmpty()) {
-            var n = visited.peek();
-            if (n.equals(end)) {
+    private int AStar(SearchContext context, int start, int end) {
+        context.reset();
+        var destination = nodes.get(end).coord;
+        var open = context.getOpen();
+        context.setG(start, 0.0);
+        open.insert(start, calculateF(0.0, heuristic(context, start, destination)));
+
+        while (!open.isEmpty()) {
+            var n = open.poll();
+            if (n == end) {
                 return n;
             }
-            for (var e : getEdges(n.coord)) {
-                var m = e.endNode();
-                Double currWeight = n.g + e.weight;
-                if (currWeight < m.g) {
-                    m.prev = n;
-                    m.g = currWeight;
-                    m.f = m.g + m.h;
-                    if (!visited.contains(m)) {
-                        visited.add(m);
-                    }
+            for (int i = offsets[n]; i < offsets[n + 1]; i++) {
+                var m = targets[i];
+                double currWeight = context.getG(n) + weights[i];
+                if (currWeight < context.getG(m)) {
+                    context.setPrev(m, n);
+                    context.setG(m, currWeight);
+                    open.insertOrDecrease(m, calculateF(currWeight, heuristic(context, m, destination)));
                 }
             }
-            visited.remove(n);
         }
-        return null;
+        return -1;
     }
 
     /**
      * This method performs a search algorithm and returns iteratively the order of the nodes which the drone needs to
-     * visit.
+     * visit. It uses a search context which belongs to the calling thread, so it can be called from many threads at
+     * once.
      *
      * @param start       Starting coordinates.
      * @param destination Final coordinates.
      * @return List of coordinates in LngLat format, which lays out a path from beginning -> end.
-     * If there is no valid path, it returns a Node object with a null LngLat attribute.
+     * If there is no valid path, it returns null.
      * If the destination is close to the start, this returns an empty list.
      */
     public List<LngLat> getPath(LngLat start, LngLat destination) {
-        var end = AStar(toNode(start), toNode(destination));
-        if (end == null) {
+        return getPath(start, destination, searchContexts.get());
+    }
+
+    /**
+     * This method performs a search algorithm with the given search context and returns iteratively the order of the
+     * nodes which the drone needs to visit.
+     *
+     * @param start       Starting coordinates.
+     * @param destination Final coordinates.
+     * @param context     Search context created by newSearchContext, which must not be used by another thread at the
+     *                    same time.
+     * @return List of coordinates in LngLat format, which lays out a path from beginning -> end.
+     * If there is no valid path, it returns null.
+     * If the destination is close to the start, this returns an empty list.
+     */
+    public List<LngLat> getPath(LngLat start, LngLat destination, SearchContext context) {
+        if (context.size() != nodes.size()) {
+            throw new IllegalArgumentException("The search context was not created for this graph.");
+        }
+        var startNode = toNode(start);
+        var endNode = toNode(destination);
+        var end = startNode == null || endNode == null ? -1 : AStar(context, startNode.id, endNode.id);
+        if (end == -1) {
             System.err.println("There is no path from the start to the destination coordinates.");
             return null;
         }
-        List<LngLat> path = new ArrayList<>();
         if (start.equals(destination)) {
-            return path;
+            return new ArrayList<>();
         }
-        while (end != null) {
-            path.add(0, end.coord);
-            end = end.prev;
+        return buildPath(context, end);
+    }
+
+    /**
+     * This method follows prev back from the given node to the start of the search that filled in the context.
+     *
+     * @param context Search context of a finished search.
+     * @param end     Id of the final node.
+     * @return List of coordinates in LngLat format, which lays out a path from beginning -> end.
+     */
+    private List<LngLat> buildPath(SearchContext context, int end) {
+        List<LngLat> path = new ArrayList<>();
+        while (end != -1) {
+            path.add(nodes.get(end).coord);
+            end = context.getPrev(end);
         }
+        Collections.reverse(path);
         return path;
     }
 
+    /**
+     * This method is Dijkstra's algorithm from a single start node, which stops as soon as every destination has
+     * been settled. Unlike AStar, it has no single destination to aim for, so it finds the shortest path to all the
+     * destinations in one sweep of the graph.
+     *
+     * @param context      Search context which holds the state of this query. It is reset before the search.
+     * @param start        Id of the starting node.
+     * @param destinations Ids of the nodes to find paths to.
+     */
+    private void dijkstra(SearchContext context, int start, BitSet destinations) {
+        context.reset();
+        var remaining = destinations.cardinality();
+        var open = context.getOpen();
+        context.setG(start, 0.0);
+        open.insert(start, 0.0);
+
+        while (!open.isEmpty() && remaining > 0) {
+            var n = open.poll();
+            if (destinations.get(n)) {
+                remaining--;
+            }
+            for (int i = offsets[n]; i < offsets[n + 1]; i++) {
+                var m = targets[i];
+                double currWeight = context.getG(n) + weights[i];
+                if (currWeight < context.getG(m)) {
+                    context.setPrev(m, n);
+                    context.setG(m, currWeight);
+                    open.insertOrDecrease(m, currWeight);
+                }
+            }
+        }
+    }
 
     /**
-     * After the algorithm finishes the search algorithm , this method goes through the nodes and reset the cost values,
-     * distance, and prev values for the next graph calculation.
+     * This method finds the length of the shortest path from the source to every node of the graph with a single
+     * search. Since edges can be travelled both ways, this is also the distance from every node to the source.
+     *
+     * @param source Coordinates of a node, e.g. a restaurant.
+     * @return For each node id, the length of its shortest path to the source, or infinity if there is none. If the
+     * source is not a node, every distance is infinity.
      */
-    private void resetCost() {
-        for (var node : nodeToEdges.keySet()) {
-            node.prev = null;
-            node.g = Double.POSITIVE_INFINITY;
-            node.f = Double.POSITIVE_INFINITY;
-            node.h = 0.0;
+    double[] getDistances(LngLat source) {
+        var distances = new double[nodes.size()];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        var sourceNode = toNode(source);
+        if (sourceNode == null) {
+            return distances;
         }
+        var context = searchContexts.get();
+        var all = new BitSet(nodes.size());
+        all.set(0, nodes.size());
+        dijkstra(context, sourceNode.id, all);
+        for (int i = 0; i < nodes.size(); i++) {
+            distances[i] = context.getG(i);
+        }
+        return distances;
+    }
+
+    /**
+     * This method finds the shortest paths from the start to each of the destinations with a single search, rather
+     * than one search per destination. It uses a search context which belongs to the calling thread, so it can be
+     * called from many threads at once.
+     *
+     * @param start        Starting coordinates, e.g. Appleton Tower.
+     * @param destinations Final coordinates, e.g. every restaurant.
+     * @return Map from each destination to its path from beginning -> end, in the order of the destinations.
+     * If there is no valid path to a destination, it maps to null.
+     * If a destination is the start, it maps to an empty list.
+     */
+    public Map<LngLat, List<LngLat>> getPaths(LngLat start, Collection<LngLat> destinations) {
+        return getPaths(start, destinations, searchContexts.get());
     }
 
     /**
-     * This method returns the edges of a given LngLat.
+     * This method finds the shortest paths from the start to each of the destinations with a single search, using the
+     * given search context.
      *
-     * @param lngLat coordinates to which the edges are mapped to.
-     * @return List of edges with the LngLat coordinate as the starting point.
+     * @param start        Starting coordinates, e.g. Appleton Tower.
+     * @param destinations Final coordinates, e.g. every restaurant.
+     * @param context      Search context created by newSearchContext, which must not be used by another thread at the
+     *                     same time.
+     * @return Map from each destination to its path from beginning -> end, in the order of the destinations.
+     * If there is no valid path to a destination, it maps to null.
+     * If a destination is the start, it maps to an empty list.
      */
-    private List<Edge> getEdges(LngLat lngLat) {
-        if (toNode(lngLat) != null) {
-            return nodeToEdges.get(toNode(lngLat));
+    public Map<LngLat, List<LngLat>> getPaths(LngLat start, Collection<LngLat> destinations, SearchContext context) {
+        if (context.size() != nodes.size()) {
+            throw new IllegalArgumentException("The search context was not created for this graph.");
+        }
+        Map<LngLat, List<LngLat>> paths = new LinkedHashMap<>();
+        var startNode = toNode(start);
+        var ids = new BitSet(nodes.size());
+        for (var destination : destinations) {
+            var endNode = toNode(destination);
+            if (startNode != null && endNode != null) {
+                ids.set(endNode.id);
+            }
+        }
+        if (startNode != null) {
+            dijkstra(context, startNode.id, ids);
         }
-        System.err.println("No node with coordinates: " + lngLat);
-        return new ArrayList<>();
+        for (var destination : destinations) {
+            var id = startNode == null ? -1 : coordToId.get(destination);
+            if (id == -1 || context.getG(id) == Double.POSITIVE_INFINITY) {
+                System.err.println("There is no path from the start to the destination coordinates: " + destination);
+                paths.put(destination, null);
+            } else if (start.equals(destination)) {
+                paths.put(destination, new ArrayList<>());
+            } else {
+                paths.put(destination, buildPath(context, id));
+            }
+        }
+        return paths;
+    }
+
+    public LngLat getAppletonCoord() {
+        return appletonCoord;
+    }
+
+    public NoFlyZoneIndex getNoFlyZoneIndex() {
+        return noFlyZones;
+    }
+
+    public List<LngLat> getRestaurantCoords() {
+        return restaurantCoords;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
     }
 
+    /**
+     * @return Number of directed edges of the graph, which is twice the number of pairs of nodes that are connected.
+     */
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * This method describes the size of this graph relative to another graph of the same map, typically a reduced
+     * graph compared with the full one.
+     *
+     * @param full Graph to compare with.
+     * @return Node and edge counts of both graphs, and the fraction of them this graph keeps.
+     */
+    public String describeSizeComparedTo(Graph full) {
+        return String.format("%d of %d nodes (%.1f%%) and %d of %d edges (%.1f%%)",
+                getNodeCount(), full.getNodeCount(), 100.0 * getNodeCount() / full.getNodeCount(),
+                getEdgeCount(), full.getEdgeCount(), 100.0 * getEdgeCount() / Math.max(1, full.getEdgeCount()));
+    }
+
+    /**
+     * @return Number of node pairs whose visibility had to be tested against no-fly zones while building this graph.
+     */
+    public long getVisibilityTests() {
+        return visibilityTests;
+    }
+
+    LngLat getNodeCoord(int id) {
+        return nodes.get(id).coord;
+    }
+
+    /**
+     * @return Where the edges of each node start in the compressed arrays. The array is shared, so it must not be
+     * modified.
+     */
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * @return Id of the node each edge leads to. The array is shared, so it must not be modified.
+     */
+    int[] getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return Weight of each edge. The array is shared, so it must not be modified.
+     */
+    double[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * This method returns the edges of every node as Edge records, in order of node id. The records are created from the
+     * compressed arrays the first time this is called and then kept, so the search never needs them.
+     *
+     * @return Unmodifiable map from each node to its unmodifiable list of edges.
+     */
     public Map<Node, List<Edge>> getNodeToEdges() {
-        return nodeToEdges;
+        var result = nodeToEdges;
+        if (result == null) {
+            Map<Node, List<Edge>> map = new LinkedHashMap<>();
+            for (var u : nodes) {
+                List<Edge> edges = new ArrayList<>(offsets[u.id + 1] - offsets[u.id]);
+                for (int i = offsets[u.id]; i < offsets[u.id + 1]; i++) {
+                    edges.add(new Edge(u, nodes.get(targets[i]), weights[i]));
+                }
+                map.put(u, List.copyOf(edges));
+            }
+            result = Collections.unmodifiableMap(map);
+            nodeToEdges = result;
+        }
+        return result;
     }
 
     /**
-     * This method turns a LngLat coordinate into its corresponding node.
+     * This method turns a LngLat coordinate into its corresponding node in O(1) by looking up its id.
      *
      * @param lngLat LngLat coordinate to be converted.
      * @return LngLat coordinate in Node format.
      */
     private Node toNode(LngLat lngLat) {
-        for (var node : nodeToEdges.keySet()) {
-            if (node.coord.equals(lngLat)) {
-                return node;
-            }
+        var id = coordToId.get(lngLat);
+        if (id != -1) {
+            return nodes.get(id);
         }
         System.err.println("There are no nodes associated with the coordinates: " + lngLat.toString() + ".");
         return null;
@@ -345,7 +1057,7 @@ public class Graph {
     @Override
     public String toString() {
         return "Graph{" +
-                "map=" + nodeToEdges +
+                "map=" + getNodeToEdges() +
                 '}';
     }
 }
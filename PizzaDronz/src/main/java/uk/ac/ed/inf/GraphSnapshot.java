@@ -0,0 +1,260 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class saves a built Graph to a binary file and loads it back, so that the visibility graph only has to be built
+ * again when the data it depends on changes. Each snapshot is keyed by a SHA-256 hash of the Appleton Tower
+ * coordinates, the restaurant coordinates, the no-fly zones, the graph mode and the version of the rules which decide
+ * which nodes can see each other, and a snapshot whose hash does not match the current data and rules is ignored.
+ * A snapshot is laid out as follows, in big-endian byte order:
+ * a header of magic number, format version, content hash, mode, node count and directed edge count, followed by the
+ * coordinates of each node, the offsets, the targets and the weights of the compressed edge arrays of the graph.
+ * The header of a snapshot is read first, and only a snapshot whose hash matches has its body read, through a
+ * memory-mapped FileChannel.
+ */
+public class GraphSnapshot {
+    // "PDVG", for PizzaDronz visibility graph.
+    private static final int MAGIC = 0x50445647;
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_LENGTH = Integer.BYTES * 2 + HASH_LENGTH + Integer.BYTES * 3;
+
+    private GraphSnapshot() {
+    }
+
+    /**
+     * This method calculates the content hash which a snapshot of a graph built from the given data is keyed by.
+     * Everything that changes the nodes or edges of the graph goes into the hash, including the order of the
+     * restaurants and no-fly zones, since that decides the ids of the nodes.
+     *
+     * @param appletonCoord    Coordinates of Appleton Tower.
+     * @param noFlyZones       List of no-fly zones.
+     * @param restaurantCoords List of restaurants' coordinates.
+     * @param mode             Whether the graph is a full or a reduced graph.
+     * @return SHA-256 hash of the data.
+     */
+    public static byte[] computeHash(LngLat appletonCoord, List<Polygon> noFlyZones, List<LngLat> restaurantCoords,
+                                     Graph.Mode mode) {
+        return computeHash(appletonCoord, noFlyZones, restaurantCoords, mode, Graph.RULES_VERSION);
+    }
+
+    /**
+     * This method calculates the content hash of a graph built from the given data under the given version of the
+     * rules which decide its nodes and edges, see Graph.RULES_VERSION.
+     */
+    static byte[] computeHash(LngLat appletonCoord, List<Polygon> noFlyZones, List<LngLat> restaurantCoords,
+                              Graph.Mode mode, int rulesVersion) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform must support SHA-256.", e);
+        }
+        var buffer = ByteBuffer.allocate(Integer.BYTES * 3 + Double.BYTES * 2);
+        buffer.putInt(VERSION).putInt(rulesVersion).putInt(mode.ordinal());
+        putCoord(buffer, appletonCoord);
+        digest.update(buffer.flip());
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(restaurantCoords.size()).flip());
+        for (var r : restaurantCoords) {
+            digest.update(putCoord(ByteBuffer.allocate(Double.BYTES * 2), r).flip());
+        }
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(noFlyZones.size()).flip());
+        for (var nfz : noFlyZones) {
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(nfz.coordinates().size()).flip());
+            for (var c : nfz.coordinates()) {
+                digest.update(putCoord(ByteBuffer.allocate(Double.BYTES * 2), c).flip());
+            }
+        }
+        return digest.digest();
+    }
+
+    private static ByteBuffer putCoord(ByteBuffer buffer, LngLat coord) {
+        return buffer.putDouble(coord.lng()).putDouble(coord.lat());
+    }
+
+    /**
+     * This method saves the nodes and edges of the graph to the given file, keyed by the hash of the data it was built
+     * from. The snapshot replaces the file in one step, see AtomicFiles.
+     *
+     * @param graph Graph to save.
+     * @param path  File to write the snapshot to.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Graph graph, Path path) throws IOException {
+        var hash = computeHash(graph.getAppletonCoord(), graph.getNoFlyZoneIndex().getNoFlyZones(),
+                graph.getRestaurantCoords(), graph.getMode());
+        var nodeCount = graph.getNodeCount();
+        var edgeCount = graph.getEdgeCount();
+        var buffer = ByteBuffer.allocate(Math.toIntExact(snapshotLength(nodeCount, edgeCount)));
+        buffer.putInt(MAGIC).putInt(VERSION).put(hash).putInt(graph.getMode().ordinal())
+                .putInt(nodeCount).putInt(edgeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            putCoord(buffer, graph.getNodeCoord(i));
+        }
+        buffer.asIntBuffer().put(graph.getOffsets()).put(graph.getTargets());
+        buffer.position(buffer.position() + Integer.BYTES * (nodeCount + 1 + edgeCount));
+        buffer.asDoubleBuffer().put(graph.getWeights());
+        buffer.position(buffer.limit());
+        buffer.flip();
+
+        AtomicFiles.writeAtomically(path, buffer);
+    }
+
+    private static long snapshotLength(int nodeCount, int edgeCount) {
+        return HEADER_LENGTH + Double.BYTES * 2L * nodeCount + Integer.BYTES * (nodeCount + 1L) +
+                (long) (Integer.BYTES + Double.BYTES) * edgeCount;
+    }
+
+    /**
+     * This method loads the graph saved in the given file, if it was built from the same data.
+     *
+     * @param path             File to read the snapshot from.
+     * @param appletonCoord    Coordinates of Appleton Tower.
+     * @param noFlyZones       Spatial index over the no-fly zones.
+     * @param restaurantCoords List of restaurants' coordinates.
+     * @param mode             Whether the graph should be a full or a reduced graph.
+     * @return The saved Graph object, or null if there is no snapshot, it was built from different data or it is not a
+     * valid snapshot.
+     * @throws IOException If the file exists but cannot be read.
+     */
+    public static Graph read(Path path, LngLat appletonCoord, NoFlyZoneIndex noFlyZones, List<LngLat> restaurantCoords,
+                             Graph.Mode mode) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE) {
+                System.err.println("The graph snapshot " + path + " is not a valid snapshot.");
+                return null;
+            }
+            // The header is read on its own, so that a snapshot of other data is never mapped and can be replaced.
+            var header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            var hash = new byte[HASH_LENGTH];
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                System.err.println("The graph snapshot " + path + " is not a valid snapshot.");
+                return null;
+            }
+            header.get(hash);
+            var savedMode = header.getInt();
+            var expected = computeHash(appletonCoord, noFlyZones.getNoFlyZones(), restaurantCoords, mode);
+            if (!Arrays.equals(hash, expected) || savedMode != mode.ordinal()) {
+                return null; // The data has changed since the snapshot was written.
+            }
+            var nodeCount = header.getInt();
+            var edgeCount = header.getInt();
+            if (nodeCount < 1 || edgeCount < 0 || snapshotLength(nodeCount, edgeCount) != channel.size()) {
+                System.err.println("The graph snapshot " + path + " is not a valid snapshot.");
+                return null;
+            }
+            var nodeCoords = new LngLat[nodeCount];
+            var offsets = new int[nodeCount + 1];
+            var targets = new int[edgeCount];
+            var weights = new double[edgeCount];
+            readBody(channel, nodeCoords, offsets, targets, weights);
+            if (!isValid(nodeCount, offsets, targets)) {
+                System.err.println("The graph snapshot " + path + " is not a valid snapshot.");
+                return null;
+            }
+            return Graph.createGraphFromEdges(appletonCoord, noFlyZones, restaurantCoords, mode, nodeCoords, offsets,
+                    targets, weights);
+        }
+    }
+
+    /**
+     * This method maps the body of a snapshot, which follows the header, and copies the nodes and edges out of it into
+     * the given arrays. The mapping is not kept, so nothing refers to it once this method returns.
+     */
+    private static void readBody(FileChannel channel, LngLat[] nodeCoords, int[] offsets, int[] targets,
+                                 double[] weights) throws IOException {
+        var buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH, channel.size() - HEADER_LENGTH);
+        for (int i = 0; i < nodeCoords.length; i++) {
+            nodeCoords[i] = new LngLat(buffer.getDouble(), buffer.getDouble());
+        }
+        buffer.asIntBuffer().get(offsets).get(targets);
+        buffer.position(buffer.position() + Integer.BYTES * (offsets.length + targets.length));
+        buffer.asDoubleBuffer().get(weights);
+    }
+
+    /**
+     * This method checks that the compressed edge arrays of a snapshot describe a graph, so that a damaged file cannot
+     * make a search go out of bounds.
+     */
+    private static boolean isValid(int nodeCount, int[] offsets, int[] targets) {
+        if (offsets[0] != 0 || offsets[nodeCount] != targets.length) {
+            return false;
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            if (offsets[u] > offsets[u + 1]) {
+                return false;
+            }
+        }
+        for (var v : targets) {
+            if (v < 0 || v >= nodeCount) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method loads the full graph for the given data from its snapshot, or builds it and saves a snapshot for the
+     * next run if there is no up-to-date snapshot.
+     *
+     * @param path             File to read the snapshot from and write it to.
+     * @param appletonCoord    Coordinates of Appleton Tower.
+     * @param noFlyZones       Spatial index over the no-fly zones.
+     * @param restaurantCoords List of restaurants' coordinates.
+     * @return A Graph object which is the same as one built from scratch.
+     */
+    public static Graph loadOrBuild(Path path, LngLat appletonCoord, NoFlyZoneIndex noFlyZones,
+                                    List<LngLat> restaurantCoords) {
+        return loadOrBuild(path, appletonCoord, noFlyZones, restaurantCoords, Graph.Mode.FULL);
+    }
+
+    /**
+     * This method loads the graph for the given data from its snapshot, or builds it and saves a snapshot for the next
+     * run if there is no up-to-date snapshot. Failing to read or write the snapshot is not fatal, the graph is then
+     * simply built from scratch.
+     *
+     * @param path             File to read the snapshot from and write it to.
+     * @param appletonCoord    Coordinates of Appleton Tower.
+     * @param noFlyZones       Spatial index over the no-fly zones.
+     * @param restaurantCoords List of restaurants' coordinates.
+     * @param mode             Whether to build a full or a reduced graph.
+     * @return A Graph object which is the same as one built from scratch.
+     */
+    public static Graph loadOrBuild(Path path, LngLat appletonCoord, NoFlyZoneIndex noFlyZones,
+                                    List<LngLat> restaurantCoords, Graph.Mode mode) {
+        try {
+            var graph = read(path, appletonCoord, noFlyZones, restaurantCoords, mode);
+            if (graph != null) {
+                System.out.println("Loaded the visibility graph from the snapshot " + path + ".");
+                return graph;
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read the graph snapshot " + path + ": " + e.getMessage());
+        }
+        var graph = mode == Graph.Mode.REDUCED ?
+                Graph.createReducedGraph(appletonCoord, noFlyZones, restaurantCoords) :
+                Graph.createGraph(appletonCoord, noFlyZones, restaurantCoords);
+        try {
+            write(graph, path);
+        } catch (IOException e) {
+            System.err.println("Unable to write the graph snapshot " + path + ": " + e.getMessage());
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,176 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * This class is a binary min-heap over the integer ids 0..capacity-1 of a graph's nodes, ordered by a double key.
+ * Unlike PriorityQueue, it keeps track of where each id sits in the heap, so that contains and decreaseKey run in
+ * O(1) and O(log n) respectively instead of scanning the whole queue.
+ * Ties between equal keys are broken by the smaller id so that the order in which nodes are polled is deterministic.
+ */
+public class IndexedMinHeap {
+    // heap[i] is the id stored at position i of the heap.
+    private final int[] heap;
+    // pos[id] is the position of id in the heap, or -1 if it is not in the heap.
+    private final int[] pos;
+    // keys[id] is the key of id while it is in the heap.
+    private final double[] keys;
+    private int size;
+
+    /**
+     * This constructor creates an empty heap which can hold every id in 0..capacity-1.
+     *
+     * @param capacity Number of ids (nodes) that the heap can hold.
+     */
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        pos = new int[capacity];
+        keys = new double[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return pos[id] != -1;
+    }
+
+    /**
+     * This method removes every id from the heap so that it can be reused for another search.
+     * It only touches the ids that are still in the heap, so it is O(size) rather than O(capacity).
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            pos[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * This method inserts an id with the given key, or lowers its key if it is already in the heap.
+     * If the id is already in the heap with a smaller or equal key, nothing happens.
+     *
+     * @param id  Id of the node.
+     * @param key Key (e.g. the f value) of the node.
+     */
+    public void insertOrDecrease(int id, double key) {
+        if (contains(id)) {
+            decreaseKey(id, key);
+        } else {
+            insert(id, key);
+        }
+    }
+
+    /**
+     * This method inserts a new id into the heap.
+     *
+     * @param id  Id of the node, which must not already be in the heap.
+     * @param key Key of the node.
+     */
+    public void insert(int id, double key) {
+        keys[id] = key;
+        heap[size] = id;
+        pos[id] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * This method lowers the key of an id which is already in the heap and restores the heap order.
+     *
+     * @param id  Id of the node.
+     * @param key New key of the node. Keys which are not smaller than the current key are ignored.
+     */
+    public void decreaseKey(int id, double key) {
+        if (key < keys[id]) {
+            keys[id] = key;
+            siftUp(pos[id]);
+        }
+    }
+
+    /**
+     * This method returns the id with the smallest key without removing it.
+     *
+     * @return Id with the smallest key, or -1 if the heap is empty.
+     */
+    public int peek() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    /**
+     * This method removes and returns the id with the smallest key.
+     *
+     * @return Id with the smallest key, or -1 if the heap is empty.
+     */
+    public int poll() {
+        if (size == 0) {
+            return -1;
+        }
+        var min = heap[0];
+        pos[min] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            pos[heap[0]] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    public double getKey(int id) {
+        return keys[id];
+    }
+
+    /**
+     * This method returns true if the id at position i should sit above the id at position j.
+     */
+    private boolean less(int i, int j) {
+        int a = heap[i];
+        int b = heap[j];
+        int cmp = Double.compare(keys[a], keys[b]);
+        return cmp < 0 || (cmp == 0 && a < b);
+    }
+
+    private void swap(int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+        pos[heap[i]] = i;
+        pos[heap[j]] = j;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && less(right, left)) {
+                smallest = right;
+            }
+            if (!less(smallest, i)) {
+                break;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+}
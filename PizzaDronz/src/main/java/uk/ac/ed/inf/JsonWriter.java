@@ -1,23 +1,46 @@
 package uk.ac.ed.inf;
 
-import com.mapbox.geojson.FeatureCollection;
-import com.mapbox.geojson.LineString;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
 
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
  * This static class deals with writing out data in JSON/GeoJSON format calculated by the system.
  */
-@SuppressWarnings("unchecked")
 public class JsonWriter {
+    // Passed as the number of decimal places to write the GeoJSON coordinates without rounding them.
+    public static final int FULL_PRECISION = -1;
+    // Generators only close the streams they are given if asked to, so the callers close the files themselves.
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+    private static final int BUFFER_SIZE = 1 << 16;
+    // A double holds no more than about 15 significant decimal digits, so rounding to more places changes nothing.
+    static final int MAX_DECIMALS = 15;
+
     private final String date;
+    private final Path directory;
 
     public JsonWriter(String date) {
+        this(date, Path.of(""));
+    }
+
+    /**
+     * This constructor creates a JsonWriter which writes the files for the date into the given directory.
+     *
+     * @param date      Date in YYYY-MM-dd format, which is part of the name of each file.
+     * @param directory Directory to write the files into.
+     */
+    public JsonWriter(String date, Path directory) {
         this.date = date;
+        this.directory = directory;
     }
 
     /**
@@ -30,12 +53,25 @@ public class JsonWriter {
      * @throws IOException This exception is thrown when the file cannot be created.
      */
     public void writeDeliveries(List<ValidatedOrder> validatedOrders) throws IOException {
-        var deliveries = new JSONArray();
-        for (var order : validatedOrders) {
-            deliveries.add(order.toJsonObject());
+        try (var deliveriesFile = openFile("deliveries-" + date + ".json")) {
+            writeDeliveries(validatedOrders, deliveriesFile);
         }
-        try (var deliveriesFile = new FileWriter("deliveries-" + date + ".json")) {
-            deliveriesFile.write(deliveries.toJSONString());
+    }
+
+    /**
+     * This method streams the orders to the given output stream as a JSON array, one object per order.
+     *
+     * @param validatedOrders List of orders to be parsed.
+     * @param out             Stream to write to, which is left open.
+     * @throws IOException This exception is thrown when the stream cannot be written to.
+     */
+    static void writeDeliveries(List<ValidatedOrder> validatedOrders, OutputStream out) throws IOException {
+        try (var generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartArray();
+            for (var order : validatedOrders) {
+                order.writeJson(generator);
+            }
+            generator.writeEndArray();
         }
     }
 
@@ -49,50 +85,176 @@ public class JsonWriter {
      * toLatitude - Latitude value of the next point
      * ticksSinceStartOfCalculation - Time it took for each calculation of a move. (In nanoseconds)
      *
-     * @param paths List of Move steps that the drone took.
+     * @param moveLog Log of the moves that the drone took, in order.
      * @throws IOException This exception is thrown when the file cannot be created.
      */
-    public void writeFlightpath(List<Move> paths) throws IOException {
-        var flightPath = new JSONArray();
-        for (int i = 0; i < paths.size(); i++) {
-            var currPath = paths.get(i);
-            Move nextPath;
-            if (i < paths.size() - 1) {
-                nextPath = paths.get(i + 1);
-            } else { // When i == paths.size() - 1, the current direction will be to hover. Thus, the next coordinates
-                // will be the same, and we can point nextPath at currPath.
-                nextPath = currPath;
-            }
-            var move = new JSONObject();
-            move.put("orderNo", currPath.orderNo());
-            move.put("fromLongitude", currPath.coordinates().lng());
-            move.put("fromLatitude", currPath.coordinates().lat());
-            move.put("angle", currPath.direction() == null ? null : currPath.direction().getAngle());
-            move.put("toLongitude", nextPath.coordinates().lng());
-            move.put("toLatitude", nextPath.coordinates().lat());
-            move.put("ticksSinceStartOfCalculation", currPath.tick());
-            flightPath.add(move);
+    public void writeFlightpath(MoveHistory moveLog) throws IOException {
+        try (var flightPathFile = openFile("flightpath-" + date + ".json")) {
+            writeFlightpath(moveLog, flightPathFile);
         }
-        try (var flightPathFile = new FileWriter("flightpath-" + date + ".json")) {
-            flightPathFile.write(flightPath.toJSONString());
+    }
+
+    /**
+     * This method streams the moves to the given output stream as a JSON array, one object per move. The moves are read
+     * column by column from the log and written straight out, so neither a Move object nor a JSON object is created for
+     * them and the document is never held in memory as a whole.
+     *
+     * @param moveLog Log of the moves that the drone took, in order, or a flight path file it was saved to.
+     * @param out     Stream to write to, which is left open.
+     * @throws IOException This exception is thrown when the stream cannot be written to.
+     */
+    static void writeFlightpath(MoveHistory moveLog, OutputStream out) throws IOException {
+        try (var generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartArray();
+            for (int i = 0; i < moveLog.size(); i++) {
+                // When i == moveLog.size() - 1, the current direction will be to hover. Thus, the next coordinates will
+                // be the same, and we can point the next move at the current one.
+                var next = i < moveLog.size() - 1 ? i + 1 : i;
+                var direction = moveLog.getDirection(i);
+                generator.writeStartObject();
+                generator.writeStringField("orderNo", moveLog.getOrderNo(i));
+                generator.writeNumberField("fromLongitude", moveLog.getLng(i));
+                generator.writeNumberField("fromLatitude", moveLog.getLat(i));
+                generator.writeFieldName("angle");
+                if (direction == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(direction.getAngle());
+                }
+                generator.writeNumberField("toLongitude", moveLog.getLng(next));
+                generator.writeNumberField("toLatitude", moveLog.getLat(next));
+                generator.writeNumberField("ticksSinceStartOfCalculation", moveLog.getTick(i));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
         }
     }
 
     /**
-     * This method writes the flight path of the drone in GeoJSON format.
+     * This method opens a file for writing through a buffer, so that the generators write it in large blocks.
+     */
+    private OutputStream openFile(String name) throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(directory.resolve(name)), BUFFER_SIZE);
+    }
+
+    /**
+     * This method writes the flight path of the drone in GeoJSON format, with one Feature per order, at full precision.
+     * See here for detailed GeoJSON specifications: <a href="https://geojson.org/">...</a>
+     *
+     * @param moveLog Log of the moves that the drone took while it was operating, in order.
+     * @throws IOException This exception is thrown when the file cannot be created.
+     */
+    public void writeGeoJson(MoveHistory moveLog) throws IOException {
+        writeGeoJson(moveLog, FULL_PRECISION, false);
+    }
+
+    /**
+     * This method writes the flight path of the drone in GeoJSON format, with one Feature per order.
      * See here for detailed GeoJSON specifications: <a href="https://geojson.org/">...</a>
      *
-     * @param allPaths List of points which form a path that the drone took while it was operating.
+     * @param moveLog       Log of the moves that the drone took while it was operating, in order.
+     * @param decimals      Number of decimal places to round the coordinates to, or FULL_PRECISION.
+     * @param dropCollinear Whether to leave out the points in the middle of a straight line.
      * @throws IOException This exception is thrown when the file cannot be created.
      */
-    public void writeGeoJson(List<Move> allPaths) throws IOException {
-        var points = allPaths.stream().map(m -> m.coordinates().toPoint()).toList();
-        var lineString = LineString.fromLngLats(points);
-        var feature = com.mapbox.geojson.Feature.fromGeometry(lineString);
-        var featureCollection = FeatureCollection.fromFeature(feature);
-        try (var droneGeoJsonFile = new FileWriter("drone-" + date + ".geojson")) {
-            droneGeoJsonFile.write(featureCollection.toJson());
+    public void writeGeoJson(MoveHistory moveLog, int decimals, boolean dropCollinear) throws IOException {
+        try (var droneGeoJsonFile = openFile("drone-" + date + ".geojson")) {
+            writeGeoJson(moveLog, droneGeoJsonFile, decimals, dropCollinear);
         }
     }
 
+    /**
+     * This method writes the flight path of the drone to the given output stream as a GeoJSON feature collection, at
+     * full precision.
+     *
+     * @param moveLog Log of the moves that the drone took, in order, or a flight path file it was saved to.
+     * @param out     Stream to write to, which is left open.
+     * @throws IOException This exception is thrown when the stream cannot be written to.
+     */
+    static void writeGeoJson(MoveHistory moveLog, OutputStream out) throws IOException {
+        writeGeoJson(moveLog, out, FULL_PRECISION, false);
+    }
+
+    /**
+     * This method streams the flight path of the drone to the given output stream as a GeoJSON feature collection.
+     * Each run of moves for the same order becomes a Feature with a LineString geometry and the order number as its
+     * orderNo property, so the map viewer draws many small geometries instead of one for the whole day.
+     * A point in the middle of a line is collinear with its neighbours when the drone flew on in the same direction, or
+     * is the same as the point before it when the drone hovered, and such points are left out if asked to. Points
+     * which are the same as the one before after rounding are always left out. The first and last point of each line
+     * are always kept, and a line of a single move repeats its point, since a LineString needs two positions.
+     *
+     * @param moveLog       Log of the moves that the drone took, in order, or a flight path file it was saved to.
+     * @param out           Stream to write to, which is left open.
+     * @param decimals      Number of decimal places to round the coordinates to, or FULL_PRECISION.
+     * @param dropCollinear Whether to leave out the points in the middle of a straight line.
+     * @throws IOException This exception is thrown when the stream cannot be written to.
+     */
+    static void writeGeoJson(MoveHistory moveLog, OutputStream out, int decimals, boolean dropCollinear)
+            throws IOException {
+        if (decimals != FULL_PRECISION && (decimals < 0 || decimals > MAX_DECIMALS)) {
+            throw new IllegalArgumentException("Coordinates can be rounded to between 0 and " + MAX_DECIMALS +
+                    " decimal places.");
+        }
+        var scale = decimals == FULL_PRECISION ? 0.0 : Math.pow(10, decimals);
+        try (var generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "FeatureCollection");
+            generator.writeArrayFieldStart("features");
+            var start = 0;
+            while (start < moveLog.size()) {
+                var order = moveLog.getOrderIndex(start);
+                var end = start;
+                while (end + 1 < moveLog.size() && moveLog.getOrderIndex(end + 1) == order) {
+                    end++;
+                }
+                generator.writeStartObject();
+                generator.writeStringField("type", "Feature");
+                generator.writeObjectFieldStart("properties");
+                generator.writeStringField("orderNo", moveLog.getOrderNo(start));
+                generator.writeEndObject();
+                generator.writeObjectFieldStart("geometry");
+                generator.writeStringField("type", "LineString");
+                generator.writeArrayFieldStart("coordinates");
+                var lastLng = round(moveLog.getLng(start), scale);
+                var lastLat = round(moveLog.getLat(start), scale);
+                writePosition(generator, lastLng, lastLat);
+                for (int i = start + 1; i < end; i++) {
+                    if (dropCollinear && (moveLog.getDirection(i - 1) == null ||
+                            moveLog.getDirection(i - 1) == moveLog.getDirection(i))) {
+                        continue;
+                    }
+                    var lng = round(moveLog.getLng(i), scale);
+                    var lat = round(moveLog.getLat(i), scale);
+                    if (lng != lastLng || lat != lastLat) {
+                        writePosition(generator, lng, lat);
+                        lastLng = lng;
+                        lastLat = lat;
+                    }
+                }
+                writePosition(generator, round(moveLog.getLng(end), scale), round(moveLog.getLat(end), scale));
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeEndObject();
+                start = end + 1;
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * This method rounds a coordinate to the decimal places given by the scale, or leaves it as it is if the scale is 0.
+     */
+    private static double round(double coordinate, double scale) {
+        return scale == 0.0 ? coordinate : Math.round(coordinate * scale) / scale;
+    }
+
+    private static void writePosition(JsonGenerator generator, double lng, double lat) throws IOException {
+        generator.writeStartArray();
+        generator.writeNumber(lng);
+        generator.writeNumber(lat);
+        generator.writeEndArray();
+    }
+
 }
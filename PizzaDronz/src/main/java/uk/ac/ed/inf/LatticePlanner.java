@@ -0,0 +1,261 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * This class plans the moves of the drone by searching the lattice of positions it can reach with moves in the 16
+ * compass directions, rather than steering greedily towards the nodes of a visibility graph path. It runs A-Star where
+ * every move costs one, so the plan it returns uses the fewest moves needed to get close to the destination.
+ * Positions reached along different sequences of moves are only equal up to rounding, so positions are quantised to a
+ * tiny fraction of a move before they are looked up in the closed set.
+ * The heuristic is the length of the shortest path around the no-fly zones, taken from the visibility graph, divided by
+ * the length of a move. A planner does not change once it has been created, so it can plan from many threads at once.
+ */
+public class LatticePlanner {
+    // Length of a single move of the drone, in degrees.
+    private static final double STEP = 0.00015;
+    // Distance below which LngLat.closeTo treats two positions as close, in degrees.
+    private static final double CLOSE_THRESHOLD = 0.00015;
+    // Positions closer than this are treated as the same lattice point.
+    private static final double QUANTUM = STEP * 1e-4;
+    // Number of lattice points a single plan may create before it gives up.
+    private static final int DEFAULT_MAX_STATES = 1 << 18;
+    // Number of lattice points a plan may create for each move that the heuristic expects it to need. Plans which need
+    // more than this are the ones that only save a move or two over steering, at many times the cost.
+    private static final int STATES_PER_MOVE = 512;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Graph graph;
+    private final NoFlyZoneIndex noFlyZones;
+    private final int maxStates;
+    private final LongAdder expandedStates = new LongAdder();
+
+    private LatticePlanner(Graph graph, int maxStates) {
+        this.graph = graph;
+        this.noFlyZones = graph.getNoFlyZoneIndex();
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * This is a static factory method which creates a new LatticePlanner object.
+     *
+     * @param graph Visibility graph of the map, whose no-fly zones the drone must avoid.
+     * @return A new LatticePlanner object.
+     */
+    public static LatticePlanner createLatticePlanner(Graph graph) {
+        return createLatticePlanner(graph, DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * This is a static factory method which creates a new LatticePlanner object with a limit on the size of a search.
+     *
+     * @param graph     Visibility graph of the map, whose no-fly zones the drone must avoid.
+     * @param maxStates Number of lattice points a single plan may create before it gives up, however long it is.
+     * @return A new LatticePlanner object.
+     */
+    public static LatticePlanner createLatticePlanner(Graph graph, int maxStates) {
+        return new LatticePlanner(graph, maxStates);
+    }
+
+    /**
+     * This class estimates how many moves are needed to get close to a destination, using the distances of the
+     * visibility graph to the destination.
+     */
+    private final class Heuristic {
+        private final LngLat destination;
+        // For each node id, the length of the shortest path from the node to the destination.
+        private final double[] distances;
+        private final LngLat[] coords;
+        // Ids of the nodes which have a path to the destination, nearest to the destination first. Empty if the
+        // destination is not a node of the graph, so that the distances are of no use.
+        private final int[] ranking;
+
+        private Heuristic(LngLat destination) {
+            this.destination = destination;
+            distances = graph.getDistances(destination);
+            coords = new LngLat[distances.length];
+            for (int i = 0; i < coords.length; i++) {
+                coords[i] = graph.getNodeCoord(i);
+            }
+            ranking = IntStream.range(0, distances.length)
+                    .filter(i -> distances[i] < Double.POSITIVE_INFINITY)
+                    .boxed()
+                    .sorted(Comparator.comparingDouble(i -> distances[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        /**
+         * This method calculates the length of the shortest path from p to the destination around the no-fly zones.
+         * Such a path goes straight to a node that p can see and then follows the visibility graph, so the length is
+         * the smallest |p - v| + distance(v) over the nodes v that p can see. The nodes are tried nearest to the
+         * destination first, so the search can stop at the first node whose own distance is no better than the best
+         * path found, and a node is only tested for visibility if it would give a better path.
+         * If the destination is not a node of the graph, the straight-line distance is used instead.
+         *
+         * @param p Position of the drone.
+         * @return Length of the shortest path from p to the destination.
+         */
+        private double distanceFrom(LngLat p) {
+            var straight = p.distanceTo(destination);
+            if (ranking.length == 0) {
+                return straight;
+            }
+            var best = Double.POSITIVE_INFINITY;
+            for (var i : ranking) {
+                if (distances[i] >= best) {
+                    break;
+                }
+                var estimate = p.distanceTo(coords[i]) + distances[i];
+                if (estimate < best && Graph.isVisible(p, coords[i], noFlyZones)) {
+                    best = estimate;
+                }
+            }
+            return Math.max(straight, best);
+        }
+
+        /**
+         * This method turns the distance from p into the smallest number of moves which could get close to the
+         * destination, since each move covers at most one move length of it.
+         *
+         * @param p Position of the drone.
+         * @return Lower bound on the number of moves left.
+         */
+        private double movesFrom(LngLat p) {
+            var moves = Math.ceil((distanceFrom(p) - CLOSE_THRESHOLD) / STEP - 1e-9);
+            return Math.max(0.0, moves);
+        }
+    }
+
+    /**
+     * This method finds the shortest sequence of moves from the start which ends close to the destination without
+     * crossing a no-fly zone, using the same test for each move as PathFinder.
+     * Lattice points are kept in growing primitive arrays indexed by the order in which they were found, and the open
+     * set is an IndexedMinHeap over those indices. Among lattice points with the same f value, the one which is furthest
+     * from the start is expanded first, which keeps the search close to a single path across the many plans with the
+     * same number of moves.
+     * A plan may create STATES_PER_MOVE lattice points for each move that the heuristic expects from the start, up to
+     * the limit of the planner, and the open set is sized to match, so that a short plan does not pay for a long one.
+     *
+     * @param start       Starting coordinates.
+     * @param destination Coordinates to get close to.
+     * @return List of directions to move in, or null if the destination cannot be reached within the search limit.
+     * If the start is already close to the destination, it returns an empty list.
+     */
+    public List<Direction> plan(LngLat start, LngLat destination) {
+        var heuristic = new Heuristic(destination);
+        var capacity = 1024;
+        var lngs = new double[capacity];
+        var lats = new double[capacity];
+        var moves = new int[capacity];
+        var parents = new int[capacity];
+        var directions = new Direction[capacity];
+        var closed = new BitSet();
+        var index = new CoordinateIndex();
+        var startMoves = heuristic.movesFrom(start);
+        var limit = (int) Math.min(maxStates, STATES_PER_MOVE * (startMoves + 1.0));
+        var open = new IndexedMinHeap(limit);
+
+        lngs[0] = start.lng();
+        lats[0] = start.lat();
+        parents[0] = -1;
+        index.put(quantise(start.lng()), quantise(start.lat()), 0);
+        open.insert(0, startMoves);
+        var count = 1;
+
+        while (!open.isEmpty()) {
+            var s = open.poll();
+            var lng = lngs[s];
+            var lat = lats[s];
+            if (MoveKernel.isClose(lng, lat, destination.lng(), destination.lat())) {
+                return buildPlan(parents, directions, s);
+            }
+            closed.set(s);
+            expandedStates.increment();
+            for (var d : DIRECTIONS) {
+                var nextLng = lng + MoveKernel.getLngStep(d);
+                var nextLat = lat + MoveKernel.getLatStep(d);
+                if (noFlyZones.isLineIntersectingNfz(lng, lat, nextLng, nextLat)) {
+                    continue;
+                }
+                var nextMoves = moves[s] + 1;
+                var id = index.get(quantise(nextLng), quantise(nextLat));
+                if (id == -1) {
+                    var h = heuristic.movesFrom(new LngLat(nextLng, nextLat));
+                    if (Double.isInfinite(h)) {
+                        continue;
+                    }
+                    if (count == limit) {
+                        System.err.println("The lattice search from " + start + " to " + destination +
+                                " gave up after " + limit + " lattice points.");
+                        return null;
+                    }
+                    if (count == capacity) {
+                        capacity *= 2;
+                        lngs = Arrays.copyOf(lngs, capacity);
+                        lats = Arrays.copyOf(lats, capacity);
+                        moves = Arrays.copyOf(moves, capacity);
+                        parents = Arrays.copyOf(parents, capacity);
+                        directions = Arrays.copyOf(directions, capacity);
+                    }
+                    id = count++;
+                    index.put(quantise(nextLng), quantise(nextLat), id);
+                    moves[id] = nextMoves;
+                    open.insert(id, key(nextMoves, h));
+                } else if (closed.get(id) || nextMoves >= moves[id]) {
+                    continue;
+                } else {
+                    var h = open.getKey(id) - key(moves[id], 0.0);
+                    moves[id] = nextMoves;
+                    open.decreaseKey(id, key(nextMoves, h));
+                }
+                // The position is replaced as well, so that it is always exactly where the moves of the plan end up.
+                lngs[id] = nextLng;
+                lats[id] = nextLat;
+                parents[id] = s;
+                directions[id] = d;
+            }
+        }
+        System.err.println("There is no sequence of moves from " + start + " to " + destination + ".");
+        return null;
+    }
+
+    private static long quantise(double degrees) {
+        return Math.round(degrees / QUANTUM);
+    }
+
+    /**
+     * This method calculates the key of a lattice point in the open set: its f value, minus a tiny amount for each
+     * move already made, so that deeper lattice points come first among those with the same f value.
+     */
+    private static double key(int moves, double h) {
+        return moves + h - moves * 1e-7;
+    }
+
+    private static List<Direction> buildPlan(int[] parents, Direction[] directions, int end) {
+        List<Direction> plan = new ArrayList<>();
+        for (var s = end; parents[s] != -1; s = parents[s]) {
+            plan.add(directions[s]);
+        }
+        Collections.reverse(plan);
+        return plan;
+    }
+
+    public NoFlyZoneIndex getNoFlyZoneIndex() {
+        return noFlyZones;
+    }
+
+    /**
+     * @return Number of lattice points expanded by every plan of this planner so far.
+     */
+    public long getExpandedStates() {
+        return expandedStates.sum();
+    }
+}
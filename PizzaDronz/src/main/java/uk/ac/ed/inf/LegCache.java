@@ -0,0 +1,280 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class caches the moves of single legs of a flight, so that a leg which was flown before, on the same day or on
+ * an earlier one, does not have to be planned again. A leg is keyed by the planner that planned it, the content hash of
+ * the no-fly zones it avoids and the exact coordinates of its start and end, so a leg is only reused where it gives the
+ * same moves as planning it again. The directions of the moves are packed two to a byte.
+ * The cache holds at most a fixed number of legs and evicts the leg which was used least recently when it is full.
+ * It can be saved to a binary file and loaded back, laid out as follows, in big-endian byte order:
+ * a header of magic number, format version, planner version and number of legs, followed by each leg from the least
+ * recently used one, as the planner, the content hash, the start and end coordinates, the number of moves and the
+ * packed directions. A file written by planners of another version is ignored, since its legs may differ from the ones
+ * the planners would plan now.
+ * The methods of a cache are synchronised, so it can be shared by many threads.
+ */
+public class LegCache {
+    // "PDLC", for PizzaDronz leg cache.
+    private static final int MAGIC = 0x50444C43;
+    private static final int VERSION = 2;
+    // Version of the algorithms of PathFinder and LatticePlanner whose legs are cached. It must be bumped whenever they
+    // would plan different moves between the same coordinates, or the legs they planned before would be replayed.
+    static final int PLANNER_VERSION = 1;
+    private static final int HEADER_LENGTH = Integer.BYTES * 4;
+    private static final int LEG_HEADER_LENGTH = 1 + Long.BYTES + Double.BYTES * 4 + Integer.BYTES;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * This enum tells apart legs which were planned in different ways between the same coordinates.
+     */
+    public enum Planner {
+        // Steered greedily towards the end by PathFinder, see MoveKernel.findBestDirection.
+        STEERED,
+        // Planned with the fewest moves by a LatticePlanner.
+        LATTICE
+    }
+
+    private record Key(Planner planner, long noFlyZoneHash, double startLng, double startLat, double endLng,
+                       double endLat) {
+    }
+
+    private final int maxLegs;
+    private final LinkedHashMap<Key, byte[]> legs;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private LegCache(int maxLegs) {
+        this.maxLegs = maxLegs;
+        // Access order, so that the eldest entry is the one that was used least recently.
+        legs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                if (size() > LegCache.this.maxLegs) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * This is a static factory method which creates a new, empty LegCache object.
+     *
+     * @param maxLegs Largest number of legs to hold.
+     * @return A new LegCache object.
+     */
+    public static LegCache createLegCache(int maxLegs) {
+        if (maxLegs < 1) {
+            throw new IllegalArgumentException("A leg cache must be able to hold at least one leg.");
+        }
+        return new LegCache(maxLegs);
+    }
+
+    private static Key key(Planner planner, NoFlyZoneIndex noFlyZones, LngLat start, LngLat end) {
+        return new Key(planner, noFlyZones.getContentHash(), start.lng(), start.lat(), end.lng(), end.lat());
+    }
+
+    /**
+     * This method looks up the directions of the moves of a leg.
+     *
+     * @param planner    Planner which the leg was planned with.
+     * @param noFlyZones Spatial index over the no-fly zones the leg avoids.
+     * @param start      Exact coordinates where the leg starts.
+     * @param end        Coordinates which the leg gets close to.
+     * @return The directions of the moves of the leg, or null if the leg is not in the cache.
+     */
+    public synchronized List<Direction> get(Planner planner, NoFlyZoneIndex noFlyZones, LngLat start, LngLat end) {
+        var packed = legs.get(key(planner, noFlyZones, start, end));
+        if (packed == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return unpack(packed);
+    }
+
+    /**
+     * This method adds the directions of the moves of a leg to the cache, evicting the least recently used leg if the
+     * cache is full. Legs which contain a hover cannot be packed and are not cached.
+     *
+     * @param planner    Planner which the leg was planned with.
+     * @param noFlyZones Spatial index over the no-fly zones the leg avoids.
+     * @param start      Exact coordinates where the leg starts.
+     * @param end        Coordinates which the leg gets close to.
+     * @param directions Directions of the moves of the leg.
+     */
+    public synchronized void put(Planner planner, NoFlyZoneIndex noFlyZones, LngLat start, LngLat end,
+                                 List<Direction> directions) {
+        for (var d : directions) {
+            if (d == null) {
+                return;
+            }
+        }
+        legs.put(key(planner, noFlyZones, start, end), pack(directions));
+    }
+
+    /**
+     * This method packs directions two to a byte: the number of moves is stored separately, and the direction of move
+     * i is in the low four bits of byte i / 2 if i is even and in the high four bits otherwise.
+     */
+    private static byte[] pack(List<Direction> directions) {
+        var packed = new byte[Integer.BYTES + (directions.size() + 1) / 2];
+        ByteBuffer.wrap(packed).putInt(directions.size());
+        for (int i = 0; i < directions.size(); i++) {
+            packed[Integer.BYTES + i / 2] |= (byte) (directions.get(i).ordinal() << (i % 2 * 4));
+        }
+        return packed;
+    }
+
+    private static List<Direction> unpack(byte[] packed) {
+        var count = ByteBuffer.wrap(packed).getInt();
+        List<Direction> directions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            directions.add(DIRECTIONS[(packed[Integer.BYTES + i / 2] >> (i % 2 * 4)) & 0xF]);
+        }
+        return directions;
+    }
+
+    public synchronized int size() {
+        return legs.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Fraction of the lookups that found their leg, or 0 if there were no lookups.
+     */
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * This method saves the legs in the cache to the given file, replacing it in one step, see AtomicFiles.
+     *
+     * @param path File to write the cache to.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void write(Path path) throws IOException {
+        var length = HEADER_LENGTH;
+        for (var packed : legs.values()) {
+            length += LEG_HEADER_LENGTH + packed.length - Integer.BYTES;
+        }
+        var buffer = ByteBuffer.allocate(length);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(PLANNER_VERSION).putInt(legs.size());
+        for (var leg : legs.entrySet()) {
+            var key = leg.getKey();
+            buffer.put((byte) key.planner().ordinal()).putLong(key.noFlyZoneHash())
+                    .putDouble(key.startLng()).putDouble(key.startLat())
+                    .putDouble(key.endLng()).putDouble(key.endLat())
+                    .put(leg.getValue());
+        }
+        buffer.flip();
+
+        AtomicFiles.writeAtomically(path, buffer);
+    }
+
+    /**
+     * This method loads the legs saved in the given file into a new cache. Legs for other no-fly zones are loaded as
+     * well, since the no-fly zones may change back on a later day, but are the first to be evicted once the cache
+     * fills up because they are never used.
+     *
+     * @param path    File to read the cache from.
+     * @param maxLegs Largest number of legs to hold.
+     * @return A new LegCache object with the saved legs, or null if there is no cache or it is not a valid cache.
+     * @throws IOException If the file exists but cannot be read.
+     */
+    public static LegCache read(Path path, int maxLegs) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        var cache = createLegCache(maxLegs);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                System.err.println("The leg cache " + path + " is not a valid leg cache.");
+                return null;
+            }
+            if (buffer.getInt() != PLANNER_VERSION) {
+                System.err.println("The leg cache " + path + " was written by other planners and is ignored.");
+                return null;
+            }
+            var count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                var planner = buffer.get();
+                if (planner < 0 || planner >= Planner.values().length) {
+                    System.err.println("The leg cache " + path + " is not a valid leg cache.");
+                    return null;
+                }
+                var key = new Key(Planner.values()[planner], buffer.getLong(), buffer.getDouble(),
+                        buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+                var moves = buffer.getInt();
+                if (moves < 0 || (moves + 1L) / 2 > buffer.remaining()) {
+                    System.err.println("The leg cache " + path + " is not a valid leg cache.");
+                    return null;
+                }
+                var packed = new byte[Integer.BYTES + (moves + 1) / 2];
+                ByteBuffer.wrap(packed).putInt(moves);
+                buffer.get(packed, Integer.BYTES, packed.length - Integer.BYTES);
+                cache.legs.put(key, packed);
+            }
+        } catch (BufferUnderflowException e) {
+            System.err.println("The leg cache " + path + " is not a valid leg cache.");
+            return null;
+        }
+        cache.evictions = 0;
+        return cache;
+    }
+
+    /**
+     * This method loads the cache saved in the given file, or creates an empty cache if there is no valid one.
+     * Failing to read the cache is not fatal, the legs are then simply planned again.
+     *
+     * @param path    File to read the cache from.
+     * @param maxLegs Largest number of legs to hold.
+     * @return A new LegCache object.
+     */
+    public static LegCache loadOrCreate(Path path, int maxLegs) {
+        try {
+            var cache = read(path, maxLegs);
+            if (cache != null) {
+                System.out.println("Loaded " + cache.size() + " legs from the leg cache " + path + ".");
+                return cache;
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read the leg cache " + path + ": " + e.getMessage());
+        }
+        return createLegCache(maxLegs);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LegCache{" +
+                "legs=" + legs.size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -13,8 +13,8 @@ import com.mapbox.geojson.Point;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record LngLat(@JsonProperty("longitude") Double lng, @JsonProperty("latitude") Double lat) {
 
-    private static final Double MOVE_DISTANCE = 0.00015;
-    private static final Double CLOSE_THRESHOLD = 0.00015;
+    static final double MOVE_DISTANCE = 0.00015;
+    static final double CLOSE_THRESHOLD = 0.00015;
     private static final Double APPLETON_LNG = -3.186874;
     private static final Double APPLETON_LAT = 55.944494;
 
@@ -63,9 +63,7 @@ public record LngLat(@JsonProperty("longitude") Double lng, @JsonProperty("latit
             System.err.println("The LngLat object provided was null");
             return -1.0;
         }
-        return Math.sqrt(
-                Math.pow(lat - lngLat.lat, 2) + Math.pow(lng - lngLat.lng, 2)
-        );
+        return MoveKernel.distance(lng, lat, lngLat.lng, lngLat.lat);
     }
 
     /**
@@ -79,12 +77,13 @@ public record LngLat(@JsonProperty("longitude") Double lng, @JsonProperty("latit
             System.err.println("The LngLat object provided was null");
             return false;
         }
-        return distanceTo(lngLat) < (CLOSE_THRESHOLD + Math.pow(10, -12));
+        return MoveKernel.isClose(lng, lat, lngLat.lng, lngLat.lat);
     }
 
     /**
      * This method returns a new LngLat object with the updated position after it has moved in a certain direction.
      * It returns its original coordinates if d is null, i.e. the drone is hovering.
+     * The step in each direction is looked up from MoveKernel, which works it out once.
      *
      * @param d The double compass direction in degrees in which the object will move.
      * @return A new LngLat with the updated coordinates.
@@ -93,9 +92,7 @@ public record LngLat(@JsonProperty("longitude") Double lng, @JsonProperty("latit
         if (d == null) {
             return this;
         }
-        Double rad = d.getAngle() * (Math.PI / 180.0);
-        return new LngLat(lng + MOVE_DISTANCE * Math.cos(rad),
-                (lat + MOVE_DISTANCE * Math.sin(rad)));
+        return new LngLat(lng + MoveKernel.getLngStep(d), lat + MoveKernel.getLatStep(d));
     }
 
     /**
@@ -0,0 +1,168 @@
+package uk.ac.ed.inf;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class serves a ScenarioGenerator over HTTP on the local machine, with the same /restaurants, /noFlyZones,
+ * /centralArea and /orders/{date} endpoints as the REST server, so that the whole application can be run against a
+ * synthetic scenario by passing the base URL of this server instead of the REST server's.
+ * The restaurants, no-fly zones and central area are written once and kept in memory, while the orders of a date are
+ * generated and streamed for every request, so that a day of 100k orders is never held in memory as a whole.
+ */
+public class LocalRestServer {
+    private final ScenarioGenerator scenario;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final byte[] restaurants;
+    private final byte[] noFlyZones;
+    private final byte[] centralArea;
+
+    private LocalRestServer(ScenarioGenerator scenario, int port) throws IOException {
+        this.scenario = scenario;
+        var out = new ByteArrayOutputStream();
+        scenario.writeRestaurants(out);
+        restaurants = out.toByteArray();
+        out.reset();
+        scenario.writeNoFlyZones(out);
+        noFlyZones = out.toByteArray();
+        out.reset();
+        scenario.writeCentralArea(out);
+        centralArea = out.toByteArray();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * This is a static factory method which creates a new LocalRestServer object and starts serving.
+     *
+     * @param scenario Scenario to serve.
+     * @param port     Port to listen on, or 0 to pick any free port.
+     * @return A new, running LocalRestServer object.
+     * @throws IOException If the server cannot listen on the port.
+     */
+    public static LocalRestServer createLocalRestServer(ScenarioGenerator scenario, int port) throws IOException {
+        var server = new LocalRestServer(scenario, port);
+        server.server.start();
+        return server;
+    }
+
+    /**
+     * @return Base URL of the server, to pass to Client.createClient.
+     */
+    public String getBaseURL() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * This method stops the server, waiting for at most a second for requests that are being served.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * This method answers a single request. Repeated slashes inside the path and a trailing slash are ignored.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If the response cannot be written.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Only GET requests are supported.");
+                return;
+            }
+            var path = exchange.getRequestURI().getPath().replaceAll("/+", "/");
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            switch (path) {
+                case "/restaurants" -> sendBytes(exchange, restaurants);
+                case "/noFlyZones" -> sendBytes(exchange, noFlyZones);
+                case "/centralArea" -> sendBytes(exchange, centralArea);
+                default -> {
+                    if (path.startsWith("/orders/")) {
+                        sendOrders(exchange, path.substring("/orders/".length()));
+                    } else {
+                        sendError(exchange, 404, "Unknown endpoint: " + path);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void sendBytes(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * This method streams the orders of a date. The date is checked before the headers are sent, so that a bad date
+     * gets a proper error rather than a broken response.
+     */
+    private void sendOrders(HttpExchange exchange, String date) throws IOException {
+        try {
+            LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            sendError(exchange, 400, "Invalid date format: " + date);
+            return;
+        }
+        exchange.sendResponseHeaders(200, 0); // Chunked, since the length is not known in advance.
+        scenario.writeOrders(date, exchange.getResponseBody());
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        var body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * Main method for serving a synthetic scenario until the process is stopped.
+     *
+     * @param args
+     *      args[0] = Seed of the scenario
+     *      args[1] = Number of restaurants
+     *      args[2] = Number of no-fly zones
+     *      args[3] = Number of orders per day
+     *      args[4] = Port to listen on (Optional, 8080 by default)
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Usage: LocalRestServer <seed> <restaurants> <noFlyZones> <ordersPerDay> [port]");
+            System.exit(1);
+        }
+        try {
+            var scenario = ScenarioGenerator.createScenarioGenerator(Long.parseLong(args[0]),
+                    Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            var port = args.length > 4 ? Integer.parseInt(args[4]) : 8080;
+            var server = createLocalRestServer(scenario, port);
+            System.out.println("Serving the scenario at " + server.getBaseURL());
+        } catch (NumberFormatException e) {
+            System.err.println("The arguments must be whole numbers.");
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Unable to start the server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package uk.ac.ed.inf;
+
+import java.util.List;
+
+/**
+ * This interface gives read access, move by move, to the moves the drone made in a day, wherever they are stored.
+ * It is implemented by the MoveLog which the moves are recorded in and by the FlightpathFile they can be saved to, so
+ * that JsonWriter can write out either of them.
+ */
+public interface MoveHistory {
+    /**
+     * @return Number of moves.
+     */
+    int size();
+
+    /**
+     * @param move Index of a move.
+     * @return Longitude of the drone at the start of the move.
+     */
+    double getLng(int move);
+
+    /**
+     * @param move Index of a move.
+     * @return Latitude of the drone at the start of the move.
+     */
+    double getLat(int move);
+
+    /**
+     * @param move Index of a move.
+     * @return Direction of the move, or null if the drone hovered.
+     */
+    Direction getDirection(int move);
+
+    /**
+     * @param move Index of a move.
+     * @return Index of the order number of the move in getOrderNumbers.
+     */
+    int getOrderIndex(int move);
+
+    /**
+     * @param move Index of a move.
+     * @return Order number of the move.
+     */
+    String getOrderNo(int move);
+
+    /**
+     * @param move Index of a move.
+     * @return Time elapsed since the start of the path calculation when the move was calculated (In nanoseconds).
+     */
+    long getTick(int move);
+
+    /**
+     * @return Order numbers of the moves, in the order they first appear.
+     */
+    List<String> getOrderNumbers();
+}
@@ -0,0 +1,357 @@
+package uk.ac.ed.inf;
+
+/**
+ * This class simulates the moves of the drone on primitive coordinates. The step of each of the 16 compass directions
+ * and the opposite of each direction are worked out once, so that a move is two additions rather than a conversion to
+ * radians and two calls to Math.cos and Math.sin, and choosing a move does not create any objects.
+ * The steps are calculated with the same expression LngLat.nextPosition used to evaluate on every call, so a sequence
+ * of moves ends up at exactly the same coordinates as before.
+ * At the start of each leg, the kernel tries to certify the middle of the leg as clear of the no-fly zones with a single
+ * query for a corridor around the straight line to the destination, so that the moves in the middle of the leg can be
+ * chosen without testing them. Every move is still tested near the two ends of the leg, which usually lie next to the
+ * corners of no-fly zones, and on legs whose corridor is not clear.
+ * A kernel holds the current position of one drone, so each thread should use its own kernel.
+ */
+public final class MoveKernel {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // Change in longitude and latitude of a move in each direction, indexed by Direction.ordinal().
+    private static final double[] LNG_STEPS = new double[DIRECTIONS.length];
+    private static final double[] LAT_STEPS = new double[DIRECTIONS.length];
+    // Ordinal of the opposite direction, indexed by Direction.ordinal().
+    private static final int[] OPPOSITES = new int[DIRECTIONS.length];
+    // Two positions closer than this are close to each other, see LngLat.closeTo.
+    private static final double CLOSE_DISTANCE = LngLat.CLOSE_THRESHOLD + Math.pow(10, -12);
+    // Angle between two neighbouring compass directions, in degrees.
+    private static final double SECTOR = 22.5;
+    // Each move gets at least this fraction of a move length further along the line to the destination.
+    private static final double MIN_PROGRESS = Math.cos(3 * Math.PI / 16);
+    // Zig-zagging takes the drone about a fifth of a move off its course, so the corridor is widened by more than that.
+    private static final double WIDTH = 0.5;
+    // Length of each end of a leg which is left out of the corridor, in moves.
+    private static final int END_MOVES = 2;
+    // Smallest number of moves that a corridor must certify to be worth a query.
+    private static final int MIN_CERTIFIED_MOVES = 3;
+
+    static {
+        for (var d : DIRECTIONS) {
+            double rad = d.getAngle() * (Math.PI / 180.0);
+            LNG_STEPS[d.ordinal()] = LngLat.MOVE_DISTANCE * Math.cos(rad);
+            LAT_STEPS[d.ordinal()] = LngLat.MOVE_DISTANCE * Math.sin(rad);
+            var oppositeAngle = (d.getAngle() + 180) % 360;
+            for (var o : DIRECTIONS) {
+                if (o.getAngle() == oppositeAngle) {
+                    OPPOSITES[d.ordinal()] = o.ordinal();
+                }
+            }
+        }
+    }
+
+    private final NoFlyZoneIndex noFlyZones;
+    private double lng;
+    private double lat;
+    // Destination of the current leg, so that a new leg can be told apart from the next move of the same leg.
+    private double legLng = Double.NaN;
+    private double legLat = Double.NaN;
+    // Number of moves made on the current leg, and the range of them which may be chosen without testing them.
+    private int legMoves;
+    private int firstCertifiedMove;
+    private int lastCertifiedMove;
+    // Corners of the corridor of the current leg.
+    private final double[] corridorLngs = new double[5];
+    private final double[] corridorLats = new double[5];
+
+    // Distance from the destination of the move in each direction, indexed by Direction.ordinal().
+    private final double[] candidateDistances = new double[DIRECTIONS.length];
+
+    private long corridorQueries;
+    private long evaluatedCandidates;
+    private long testedMoves;
+    private long untestedMoves;
+
+    private MoveKernel(NoFlyZoneIndex noFlyZones) {
+        this.noFlyZones = noFlyZones;
+    }
+
+    /**
+     * This is a static factory method which creates a new MoveKernel object.
+     *
+     * @param noFlyZones Spatial index over the no-fly zones to avoid.
+     * @return A new MoveKernel object.
+     */
+    public static MoveKernel createMoveKernel(NoFlyZoneIndex noFlyZones) {
+        return new MoveKernel(noFlyZones);
+    }
+
+    /**
+     * @param d Direction of a move.
+     * @return Change in longitude of a move in direction d.
+     */
+    static double getLngStep(Direction d) {
+        return LNG_STEPS[d.ordinal()];
+    }
+
+    /**
+     * @param d Direction of a move.
+     * @return Change in latitude of a move in direction d.
+     */
+    static double getLatStep(Direction d) {
+        return LAT_STEPS[d.ordinal()];
+    }
+
+    /**
+     * @param d Direction of a move.
+     * @return Direction of the move which undoes a move in direction d.
+     */
+    static Direction getOpposite(Direction d) {
+        return DIRECTIONS[OPPOSITES[d.ordinal()]];
+    }
+
+    /**
+     * This method calculates the pythagorean distance between two points, see LngLat.distanceTo.
+     */
+    static double distance(double lng1, double lat1, double lng2, double lat2) {
+        double dLat = lat1 - lat2;
+        double dLng = lng1 - lng2;
+        return Math.sqrt(dLat * dLat + dLng * dLng);
+    }
+
+    /**
+     * This method checks whether two points are close to each other, see LngLat.closeTo.
+     */
+    static boolean isClose(double lng1, double lat1, double lng2, double lat2) {
+        return distance(lng1, lat1, lng2, lat2) < CLOSE_DISTANCE;
+    }
+
+    /**
+     * This method puts the drone at the given position.
+     *
+     * @param coord New position of the drone.
+     */
+    public void moveTo(LngLat coord) {
+        lng = coord.lng();
+        lat = coord.lat();
+        legLng = Double.NaN;
+        legLat = Double.NaN;
+    }
+
+    public double getLng() {
+        return lng;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    /**
+     * @return A new LngLat object at the position of the drone, for output.
+     */
+    public LngLat getCoord() {
+        return new LngLat(lng, lat);
+    }
+
+    /**
+     * This method checks whether the drone is close to the given point.
+     *
+     * @param destLng Longitude of the point.
+     * @param destLat Latitude of the point.
+     * @return True if the drone is close to the point.
+     */
+    public boolean isCloseTo(double destLng, double destLat) {
+        return isClose(lng, lat, destLng, destLat);
+    }
+
+    /**
+     * This method finds the move which takes the drone closest to the destination without crossing a no-fly zone.
+     * Among moves which get equally close, the first one in Direction order is chosen.
+     * Every move has the same length, so the closer a direction is to the bearing of the destination, the closer its
+     * move gets. The moves are therefore ranked by how close they get, which only takes arithmetic, and are tested
+     * against the no-fly zones in that order. The first move which is clear is the answer, since every move after it
+     * gets at most as close. Moves in the certified middle of a leg are not tested at all, which assumes that the drone
+     * follows the moves this method chooses from the start of the leg.
+     *
+     * @param destLng Longitude of the destination.
+     * @param destLat Latitude of the destination.
+     * @return Direction of the best move, or null if every move crosses a no-fly zone.
+     */
+    public Direction findBestDirection(double destLng, double destLat) {
+        if (destLng != legLng || destLat != legLat) {
+            startLeg(destLng, destLat);
+        }
+        var test = legMoves < firstCertifiedMove || legMoves >= lastCertifiedMove;
+        if (test) {
+            testedMoves++;
+        } else {
+            untestedMoves++;
+        }
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            candidateDistances[i] = distance(lng + LNG_STEPS[i], lat + LAT_STEPS[i], destLng, destLat);
+        }
+        // Bit i is set while direction i has not been evaluated yet.
+        var remaining = (1 << DIRECTIONS.length) - 1;
+        while (remaining != 0) {
+            var best = nextCandidate(remaining);
+            evaluatedCandidates++;
+            if (!test || !noFlyZones.isLineIntersectingNfz(lng, lat, lng + LNG_STEPS[best], lat + LAT_STEPS[best])) {
+                if (remaining != (1 << DIRECTIONS.length) - 1) {
+                    // A no-fly zone pushed the drone off the course that the corridor was certified for.
+                    lastCertifiedMove = 0;
+                }
+                return DIRECTIONS[best];
+            }
+            remaining &= ~(1 << best);
+        }
+        lastCertifiedMove = 0;
+        return null;
+    }
+
+    /**
+     * This method picks the remaining direction whose move gets closest to the destination, taking the first one in
+     * Direction order among those which get equally close.
+     *
+     * @param remaining Bit set of the directions which have not been evaluated yet, which must not be empty.
+     * @return Ordinal of the best remaining direction.
+     */
+    private int nextCandidate(int remaining) {
+        var best = -1;
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            if ((remaining & (1 << i)) != 0 && (best == -1 || candidateDistances[i] < candidateDistances[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This method tries to certify the middle of the leg to the destination. Greedy steering first heads in the compass
+     * direction nearest to the bearing of the destination, until that bearing reaches the edge of the compass sector,
+     * and then zig-zags along the edge of the sector to the destination. So the drone stays inside the triangle
+     * between the line to the destination and the corner where it turns, apart from a move of zig-zagging. The
+     * corridor is that triangle widened by half a move, without the first and last END_MOVES move lengths of the line.
+     * Each move gets between MIN_PROGRESS and one move length further along the line, which tells which moves start
+     * and end inside the corridor.
+     */
+    private void startLeg(double destLng, double destLat) {
+        legLng = destLng;
+        legLat = destLat;
+        legMoves = 0;
+        firstCertifiedMove = 0;
+        lastCertifiedMove = 0;
+        var length = distance(lng, lat, destLng, destLat);
+        var step = LngLat.MOVE_DISTANCE;
+        var start = END_MOVES * step;
+        var end = length - END_MOVES * step;
+        var first = (int) Math.ceil(start / (MIN_PROGRESS * step));
+        var last = (int) Math.floor(end / step);
+        if (last - first < MIN_CERTIFIED_MOVES) {
+            return;
+        }
+        double alongLng = (destLng - lng) / length;
+        double alongLat = (destLat - lat) / length;
+        // Angle between the line and the first direction of the drone, and between the line and the zig-zag.
+        var bearing = Math.toDegrees(Math.atan2(destLat - lat, destLng - lng));
+        var offset = bearing - Math.round(bearing / SECTOR) * SECTOR;
+        var firstAngle = Math.toRadians(Math.abs(offset));
+        var secondAngle = Math.toRadians(SECTOR / 2) - firstAngle;
+        var cornerDistance = length * Math.sin(secondAngle) / Math.sin(Math.toRadians(SECTOR / 2));
+        var cornerAlong = cornerDistance * Math.cos(firstAngle);
+        var cornerHeight = cornerDistance * Math.sin(firstAngle);
+        var middle = Math.min(end, Math.max(start, cornerAlong));
+        var width = WIDTH * step;
+        // The triangle is on the left of the line if the first direction of the drone is anticlockwise of the bearing.
+        // The corners are listed anticlockwise.
+        var side = offset < 0 ? 1.0 : -1.0;
+        setCorridorCorner(0, alongLng, alongLat, start, -side * width);
+        setCorridorCorner(1, alongLng, alongLat, end, -side * width);
+        setCorridorCorner(2, alongLng, alongLat, end, side * (height(end, cornerAlong, cornerHeight, length) + width));
+        setCorridorCorner(3, alongLng, alongLat, middle,
+                side * (height(middle, cornerAlong, cornerHeight, length) + width));
+        setCorridorCorner(4, alongLng, alongLat, start,
+                side * (height(start, cornerAlong, cornerHeight, length) + width));
+        if (side < 0) {
+            reverseCorridor();
+        }
+        corridorQueries++;
+        if (noFlyZones.isConvexRegionClear(corridorLngs, corridorLats, corridorLngs.length)) {
+            firstCertifiedMove = first;
+            lastCertifiedMove = last;
+        }
+    }
+
+    /**
+     * This method calculates the height of the triangle above the given point of the line.
+     */
+    private static double height(double along, double cornerAlong, double cornerHeight, double length) {
+        if (along <= cornerAlong) {
+            return cornerAlong == 0.0 ? 0.0 : along / cornerAlong * cornerHeight;
+        }
+        return (length - along) / (length - cornerAlong) * cornerHeight;
+    }
+
+    /**
+     * This method puts a corner of the corridor at the given distances along the line and to the left of it.
+     */
+    private void setCorridorCorner(int corner, double alongLng, double alongLat, double along, double left) {
+        corridorLngs[corner] = lng + along * alongLng - left * alongLat;
+        corridorLats[corner] = lat + along * alongLat + left * alongLng;
+    }
+
+    private void reverseCorridor() {
+        for (int i = 0, j = corridorLngs.length - 1; i < j; i++, j--) {
+            var lngSwap = corridorLngs[i];
+            corridorLngs[i] = corridorLngs[j];
+            corridorLngs[j] = lngSwap;
+            var latSwap = corridorLats[i];
+            corridorLats[i] = corridorLats[j];
+            corridorLats[j] = latSwap;
+        }
+    }
+
+    /**
+     * @return Number of candidate moves evaluated by this kernel so far, which is one for every move that is not
+     * blocked, plus one for every move that is tested and turns out to cross a no-fly zone.
+     */
+    public long getEvaluatedCandidates() {
+        return evaluatedCandidates;
+    }
+
+    /**
+     * @return Number of moves chosen by this kernel so far.
+     */
+    public long getChosenMoves() {
+        return testedMoves + untestedMoves;
+    }
+
+    /**
+     * @return Number of corridors this kernel has tested so far.
+     */
+    public long getCorridorQueries() {
+        return corridorQueries;
+    }
+
+    /**
+     * @return Number of moves chosen by testing all 16 candidate moves against the no-fly zones.
+     */
+    public long getTestedMoves() {
+        return testedMoves;
+    }
+
+    /**
+     * @return Number of moves chosen without any test, because they were certified as clear.
+     */
+    public long getUntestedMoves() {
+        return untestedMoves;
+    }
+
+    /**
+     * This method moves the drone one step in the given direction. A null direction is a hover, which does not move it.
+     *
+     * @param d Direction of the move.
+     */
+    public void step(Direction d) {
+        if (d != null) {
+            legMoves++;
+            lng += LNG_STEPS[d.ordinal()];
+            lat += LAT_STEPS[d.ordinal()];
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package uk.ac.ed.inf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is an append-only log of every move the drone made in a day. Instead of one Move object per move, the
+ * moves are stored in columns of primitives: longitude, latitude, direction ordinal, order index and tick. Each order
+ * number is stored once, and a move refers to it by its index in the table of order numbers.
+ * The columns are on the heap by default, or outside it if the log is created with createOffHeapMoveLog, so that a long
+ * day of moves puts no pressure on the garbage collector. They grow by doubling when they are full.
+ */
+public class MoveLog implements MoveHistory {
+    private static final int INITIAL_CAPACITY = 1024;
+    // Largest number of moves a column can hold, since the widest column of a ByteBuffer holds 8 bytes per move.
+    static final int MAX_CAPACITY = Integer.MAX_VALUE / Long.BYTES;
+    // Stored in place of a direction ordinal for a hover.
+    private static final byte HOVER = -1;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final boolean offHeap;
+    private DoubleBuffer lngs;
+    private DoubleBuffer lats;
+    private ByteBuffer directions;
+    private IntBuffer orders;
+    private LongBuffer ticks;
+    private int size;
+    private final List<String> orderNumbers = new ArrayList<>();
+    private final Map<String, Integer> orderIndices = new HashMap<>();
+
+    private MoveLog(boolean offHeap, int capacity) {
+        this.offHeap = offHeap;
+        lngs = allocate(capacity, Double.BYTES).asDoubleBuffer();
+        lats = allocate(capacity, Double.BYTES).asDoubleBuffer();
+        directions = allocate(capacity, 1);
+        orders = allocate(capacity, Integer.BYTES).asIntBuffer();
+        ticks = allocate(capacity, Long.BYTES).asLongBuffer();
+    }
+
+    /**
+     * This is a static factory method which creates a new, empty MoveLog object with its columns on the heap.
+     *
+     * @return A new MoveLog object.
+     */
+    public static MoveLog createMoveLog() {
+        return new MoveLog(false, INITIAL_CAPACITY);
+    }
+
+    /**
+     * This is a static factory method which creates a new, empty MoveLog object with its columns in direct buffers,
+     * outside the heap.
+     *
+     * @return A new MoveLog object.
+     */
+    public static MoveLog createOffHeapMoveLog() {
+        return new MoveLog(true, INITIAL_CAPACITY);
+    }
+
+    private ByteBuffer allocate(int capacity, int bytes) {
+        var length = Math.multiplyExact(capacity, bytes);
+        var buffer = offHeap ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * This method works out the capacity the columns grow to, which is double the current capacity or the capacity
+     * needed if that is more, but never more than MAX_CAPACITY.
+     *
+     * @param current Current capacity of the columns.
+     * @param needed  Number of moves the columns must hold.
+     * @return The new capacity of the columns.
+     * @throws IllegalStateException If the columns cannot hold that many moves.
+     */
+    static int grownCapacity(int current, long needed) {
+        if (needed > MAX_CAPACITY) {
+            throw new IllegalStateException("A move log can hold at most " + MAX_CAPACITY + " moves, but " + needed +
+                    " were needed.");
+        }
+        return (int) Math.min(MAX_CAPACITY, Math.max(needed, current * 2L));
+    }
+
+    /**
+     * This method doubles the capacity of every column until it can hold the given number of moves.
+     */
+    private void ensureCapacity(long capacity) {
+        var current = lngs.capacity();
+        if (capacity <= current) {
+            return;
+        }
+        var grown = grownCapacity(current, capacity);
+        var bigger = new MoveLog(offHeap, grown);
+        // The columns are only read and written at absolute indices, so every position stays at 0.
+        bigger.lngs.put(0, lngs, 0, size);
+        bigger.lats.put(0, lats, 0, size);
+        bigger.directions.put(0, directions, 0, size);
+        bigger.orders.put(0, orders, 0, size);
+        bigger.ticks.put(0, ticks, 0, size);
+        lngs = bigger.lngs;
+        lats = bigger.lats;
+        directions = bigger.directions;
+        orders = bigger.orders;
+        ticks = bigger.ticks;
+    }
+
+    private int orderIndex(String orderNo) {
+        var index = orderIndices.get(orderNo);
+        if (index == null) {
+            index = orderNumbers.size();
+            orderNumbers.add(orderNo);
+            orderIndices.put(orderNo, index);
+        }
+        return index;
+    }
+
+    private void put(double lng, double lat, Direction direction, int order, long tick) {
+        lngs.put(size, lng);
+        lats.put(size, lat);
+        directions.put(size, direction == null ? HOVER : (byte) direction.ordinal());
+        orders.put(size, order);
+        ticks.put(size, tick);
+        size++;
+    }
+
+    /**
+     * This method appends a single move to the log.
+     *
+     * @param move Move to append.
+     */
+    public void append(Move move) {
+        ensureCapacity(size + 1L);
+        put(move.coordinates().lng(), move.coordinates().lat(), move.direction(), orderIndex(move.orderNo()),
+                move.tick());
+    }
+
+    /**
+     * This method appends every move of a flight to the log, reading them straight from its route.
+     *
+     * @param flight Flight to append.
+     */
+    public void append(Flight flight) {
+        var route = flight.route();
+        ensureCapacity((long) size + route.size());
+        var order = orderIndex(flight.orderNo());
+        for (int i = 0; i < route.size(); i++) {
+            var coordinates = route.getCoordinates(i);
+            put(coordinates.lng(), coordinates.lat(), route.getDirection(i), order, flight.tick());
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @param move Index of a move.
+     * @return Longitude of the drone at the start of the move.
+     */
+    @Override
+    public double getLng(int move) {
+        return lngs.get(checkIndex(move));
+    }
+
+    /**
+     * @param move Index of a move.
+     * @return Latitude of the drone at the start of the move.
+     */
+    @Override
+    public double getLat(int move) {
+        return lats.get(checkIndex(move));
+    }
+
+    /**
+     * @param move Index of a move.
+     * @return Direction of the move, or null if the drone hovered.
+     */
+    @Override
+    public Direction getDirection(int move) {
+        var ordinal = directions.get(checkIndex(move));
+        return ordinal == HOVER ? null : DIRECTIONS[ordinal];
+    }
+
+    /**
+     * @param move Index of a move.
+     * @return Index of the order number of the move in getOrderNumbers.
+     */
+    @Override
+    public int getOrderIndex(int move) {
+        return orders.get(checkIndex(move));
+    }
+
+    /**
+     * @param move Index of a move.
+     * @return Order number of the move.
+     */
+    @Override
+    public String getOrderNo(int move) {
+        return orderNumbers.get(getOrderIndex(move));
+    }
+
+    /**
+     * @param move Index of a move.
+     * @return Time elapsed since the start of the path calculation when the move was calculated (In nanoseconds).
+     */
+    @Override
+    public long getTick(int move) {
+        return ticks.get(checkIndex(move));
+    }
+
+    /**
+     * @return Order numbers of the moves in the log, in the order they were first appended.
+     */
+    @Override
+    public List<String> getOrderNumbers() {
+        return List.copyOf(orderNumbers);
+    }
+
+    /**
+     * This method creates a Move object for one move of the log, for callers which need one.
+     *
+     * @param move Index of the move.
+     * @return A new Move object.
+     */
+    public Move getMove(int move) {
+        return new Move(new LngLat(getLng(move), getLat(move)), getDirection(move), getOrderNo(move), getTick(move));
+    }
+
+    /**
+     * @return Number of bytes taken up by the columns, including the capacity not yet used.
+     */
+    public long getColumnBytes() {
+        return (long) lngs.capacity() * (Double.BYTES * 2 + 1 + Integer.BYTES + Long.BYTES);
+    }
+
+    private int checkIndex(int move) {
+        if (move < 0 || move >= size) {
+            throw new IndexOutOfBoundsException("Move " + move + " is out of bounds for a log of " + size + " moves.");
+        }
+        return move;
+    }
+
+    @Override
+    public String toString() {
+        return "MoveLog{" +
+                "moves=" + size +
+                ", orders=" + orderNumbers.size() +
+                ", offHeap=" + offHeap +
+                '}';
+    }
+}
@@ -0,0 +1,385 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * This class is a spatial index over the boundary edges of all no-fly zones. It puts every edge into the cells of a
+ * uniform grid that the edge passes through, so that a segment query only has to test the edges which share a cell with
+ * it instead of every edge of every no-fly zone.
+ * The index is immutable once it has been created, so it can be queried from many threads at once.
+ */
+public class NoFlyZoneIndex {
+    // Padding added around every rasterised segment so that rounding can never drop a cell that the segment touches.
+    private static final double EPSILON = 1e-12;
+
+    private final List<Polygon> noFlyZones;
+    // The two ends of each boundary edge, in the same order as Polygon.isLineIntersectingNfz visits them.
+    private final LngLat[] edgeStarts;
+    private final LngLat[] edgeEnds;
+    // The same ends as primitive coordinates, for queries on primitive coordinates.
+    private final double[] edgeStartLngs;
+    private final double[] edgeStartLats;
+    private final double[] edgeEndLngs;
+    private final double[] edgeEndLats;
+    // Hash of the coordinates of the no-fly zones, which stays the same from one run to the next.
+    private final long contentHash;
+
+    private final double minLng;
+    private final double minLat;
+    private final double maxLng;
+    private final double maxLat;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    // Compressed lists of edge ids per cell: the edges of cell c are cellEdges[cellStart[c]..cellStart[c + 1]).
+    private final int[] cellStart;
+    private final int[] cellEdges;
+    // Created once, so that a query on primitive coordinates does not create a visitor.
+    private final CellVisitor crossingVisitor = this::isCrossingEdgeInCell;
+
+    /**
+     * This interface is called with each cell that a segment passes through, together with the segment.
+     * It returns true to stop visiting cells.
+     */
+    @FunctionalInterface
+    private interface CellVisitor {
+        boolean visit(int cell, double x1, double y1, double x2, double y2);
+    }
+
+    private NoFlyZoneIndex(List<Polygon> noFlyZones) {
+        this.noFlyZones = List.copyOf(noFlyZones);
+        List<LngLat> starts = new ArrayList<>();
+        List<LngLat> ends = new ArrayList<>();
+        for (var nfz : this.noFlyZones) {
+            var coordinates = nfz.coordinates();
+            var n = coordinates.size();
+            for (int i = 0; i < n; i++) {
+                starts.add(coordinates.get(i));
+                ends.add(coordinates.get((i + 1) % n));
+            }
+        }
+        edgeStarts = starts.toArray(new LngLat[0]);
+        edgeEnds = ends.toArray(new LngLat[0]);
+        edgeStartLngs = new double[edgeStarts.length];
+        edgeStartLats = new double[edgeStarts.length];
+        edgeEndLngs = new double[edgeStarts.length];
+        edgeEndLats = new double[edgeStarts.length];
+        for (int e = 0; e < edgeStarts.length; e++) {
+            edgeStartLngs[e] = edgeStarts[e].lng();
+            edgeStartLats[e] = edgeStarts[e].lat();
+            edgeEndLngs[e] = edgeEnds[e].lng();
+            edgeEndLats[e] = edgeEnds[e].lat();
+        }
+        long hash = mix(this.noFlyZones.size());
+        for (var nfz : this.noFlyZones) {
+            hash = mix(hash ^ nfz.coordinates().size());
+            for (var c : nfz.coordinates()) {
+                hash = mix(hash ^ Double.doubleToLongBits(c.lng()));
+                hash = mix(hash ^ Double.doubleToLongBits(c.lat()));
+            }
+        }
+        contentHash = hash;
+
+        double lngLo = Double.POSITIVE_INFINITY;
+        double latLo = Double.POSITIVE_INFINITY;
+        double lngHi = Double.NEGATIVE_INFINITY;
+        double latHi = Double.NEGATIVE_INFINITY;
+        for (var c : edgeStarts) {
+            lngLo = Math.min(lngLo, c.lng());
+            latLo = Math.min(latLo, c.lat());
+            lngHi = Math.max(lngHi, c.lng());
+            latHi = Math.max(latHi, c.lat());
+        }
+        minLng = lngLo;
+        minLat = latLo;
+        maxLng = lngHi;
+        maxLat = latHi;
+
+        // Roughly one cell per edge, so that each cell holds a small constant number of edges.
+        var side = Math.max(1, (int) Math.ceil(Math.sqrt(edgeStarts.length)));
+        columns = side;
+        rows = side;
+        cellWidth = edgeStarts.length == 0 ? 1.0 : Math.max((maxLng - minLng) / columns, Double.MIN_NORMAL);
+        cellHeight = edgeStarts.length == 0 ? 1.0 : Math.max((maxLat - minLat) / rows, Double.MIN_NORMAL);
+
+        // Count the edges of each cell first, then fill them in, to build the compressed lists without boxing.
+        var counts = new int[columns * rows + 1];
+        for (int e = 0; e < edgeStarts.length; e++) {
+            forEachCell(edgeStarts[e], edgeEnds[e], (cell, x1, y1, x2, y2) -> {
+                counts[cell + 1]++;
+                return false;
+            });
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            counts[c + 1] += counts[c];
+        }
+        cellStart = counts.clone();
+        cellEdges = new int[cellStart[columns * rows]];
+        var next = counts;
+        for (int e = 0; e < edgeStarts.length; e++) {
+            var edge = e;
+            forEachCell(edgeStarts[e], edgeEnds[e], (cell, x1, y1, x2, y2) -> {
+                cellEdges[next[cell]++] = edge;
+                return false;
+            });
+        }
+    }
+
+    /**
+     * This is a static factory method which creates a new index over the edges of the given no-fly zones.
+     *
+     * @param noFlyZones List of no-fly zones.
+     * @return A new NoFlyZoneIndex object.
+     */
+    public static NoFlyZoneIndex createNoFlyZoneIndex(List<Polygon> noFlyZones) {
+        return new NoFlyZoneIndex(noFlyZones == null ? List.of() : noFlyZones);
+    }
+
+    public List<Polygon> getNoFlyZones() {
+        return noFlyZones;
+    }
+
+    public boolean isEmpty() {
+        return noFlyZones.isEmpty();
+    }
+
+    public int getEdgeCount() {
+        return edgeStarts.length;
+    }
+
+    /**
+     * @return Hash of the coordinates of the no-fly zones, in order. Unlike hashCode, it is the same in every run, so it
+     * can key data which is saved to disk, such as the legs of a LegCache.
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * This method scrambles the bits of a hash, using the finaliser of the 64-bit MurmurHash3.
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private int column(double lng) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lng - minLng) / cellWidth)));
+    }
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat - minLat) / cellHeight)));
+    }
+
+    /**
+     * This method visits every cell of the grid that the segment l1->l2 passes through, column by column. Within each
+     * column, it works out the latitudes that the segment covers and visits the rows between them. Columns and rows are
+     * padded slightly so that rounding never stops two segments which touch from sharing a cell.
+     *
+     * @param l1      One end of the segment.
+     * @param l2      Other end of the segment.
+     * @param visitor Called with the index of each cell. Visiting stops as soon as it returns true.
+     * @return True if the visitor returned true for some cell.
+     */
+    private boolean forEachCell(LngLat l1, LngLat l2, CellVisitor visitor) {
+        return forEachCell(l1.lng(), l1.lat(), l2.lng(), l2.lat(), visitor);
+    }
+
+    private boolean forEachCell(double x1, double y1, double x2, double y2, CellVisitor visitor) {
+        double segMinX = Math.min(x1, x2);
+        double segMaxX = Math.max(x1, x2);
+        double segMinY = Math.min(y1, y2);
+        double segMaxY = Math.max(y1, y2);
+        if (segMaxX < minLng - EPSILON || segMinX > maxLng + EPSILON ||
+                segMaxY < minLat - EPSILON || segMinY > maxLat + EPSILON) {
+            return false; // The segment does not overlap the grid, so it cannot touch any edge.
+        }
+        double slope = x1 == x2 ? 0.0 : (y2 - y1) / (x2 - x1);
+        double margin = cellWidth * 1e-9 + EPSILON;
+        int firstColumn = column(segMinX - EPSILON);
+        int lastColumn = column(segMaxX + EPSILON);
+        for (int c = firstColumn; c <= lastColumn; c++) {
+            double lo;
+            double hi;
+            if (x1 == x2 || firstColumn == lastColumn) {
+                lo = segMinY;
+                hi = segMaxY;
+            } else {
+                // Part of the segment whose longitude lies inside this column, widened slightly for rounding.
+                double left = Math.max(segMinX, minLng + c * cellWidth - margin);
+                double right = Math.min(segMaxX, minLng + (c + 1) * cellWidth + margin);
+                double ya = y1 + (left - x1) * slope;
+                double yb = y1 + (right - x1) * slope;
+                lo = Math.max(segMinY, Math.min(ya, yb));
+                hi = Math.min(segMaxY, Math.max(ya, yb));
+            }
+            int lastRow = row(hi + EPSILON);
+            for (int r = row(lo - EPSILON); r <= lastRow; r++) {
+                if (visitor.visit(r * columns + c, x1, y1, x2, y2)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method checks if the line l1->l2 intersects fully with an edge of any no-fly zone. It gives the same answer
+     * as calling Polygon.isLineIntersectingNfz on every no-fly zone, but only tests the edges near the line.
+     *
+     * @param l1 Coordinates for line l1->l2.
+     * @param l2 Coordinates for line l1->l2.
+     * @return A boolean value on whether the line intersects with an edge of a no-fly zone.
+     */
+    public boolean isLineIntersectingNfz(LngLat l1, LngLat l2) {
+        return isLineIntersectingNfz(l1.lng(), l1.lat(), l2.lng(), l2.lat());
+    }
+
+    /**
+     * This method checks if the line (x1, y1)->(x2, y2) intersects fully with an edge of any no-fly zone, in the same
+     * way as isLineIntersectingNfz on LngLat objects, but without creating any objects.
+     *
+     * @param x1 Longitude of the start of the line.
+     * @param y1 Latitude of the start of the line.
+     * @param x2 Longitude of the end of the line.
+     * @param y2 Latitude of the end of the line.
+     * @return A boolean value on whether the line intersects with an edge of a no-fly zone.
+     */
+    public boolean isLineIntersectingNfz(double x1, double y1, double x2, double y2) {
+        if (edgeStarts.length == 0) {
+            return false;
+        }
+        return forEachCell(x1, y1, x2, y2, crossingVisitor);
+    }
+
+    private boolean isCrossingEdgeInCell(int cell, double x1, double y1, double x2, double y2) {
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+            var e = cellEdges[i];
+            if (Polygon.areLinesIntersectingNonCollinear(x1, y1, x2, y2,
+                    edgeStartLngs[e], edgeStartLats[e], edgeEndLngs[e], edgeEndLats[e])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method checks that no edge of any no-fly zone touches the given convex region, so that every move which
+     * starts and ends inside the region is clear. Only the edges in the cells which overlap the bounding box of the
+     * region are tested.
+     *
+     * @param lngs  Longitudes of the corners of the region, in anticlockwise order.
+     * @param lats  Latitudes of the corners of the region, in anticlockwise order.
+     * @param count Number of corners, which may be fewer than the length of the arrays.
+     * @return True if no edge crosses the region, touches its boundary or lies inside it.
+     */
+    public boolean isConvexRegionClear(double[] lngs, double[] lats, int count) {
+        if (edgeStarts.length == 0) {
+            return true;
+        }
+        double lngLo = Double.POSITIVE_INFINITY;
+        double latLo = Double.POSITIVE_INFINITY;
+        double lngHi = Double.NEGATIVE_INFINITY;
+        double latHi = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            lngLo = Math.min(lngLo, lngs[i]);
+            latLo = Math.min(latLo, lats[i]);
+            lngHi = Math.max(lngHi, lngs[i]);
+            latHi = Math.max(latHi, lats[i]);
+        }
+        if (lngHi < minLng - EPSILON || lngLo > maxLng + EPSILON || latHi < minLat - EPSILON || latLo > maxLat + EPSILON) {
+            return true;
+        }
+        int lastColumn = column(lngHi + EPSILON);
+        int lastRow = row(latHi + EPSILON);
+        for (int r = row(latLo - EPSILON); r <= lastRow; r++) {
+            for (int c = column(lngLo - EPSILON); c <= lastColumn; c++) {
+                var cell = r * columns + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    var e = cellEdges[i];
+                    if (isTouchingRegion(edgeStartLngs[e], edgeStartLats[e], edgeEndLngs[e], edgeEndLats[e],
+                            lngs, lats, count)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method checks whether the edge (x1, y1)->(x2, y2) touches the convex region: either its start lies inside
+     * the region or on its boundary, or it meets one of the sides of the region. Collinear edges and sides count as
+     * meeting even if they do not overlap, which only makes the check stricter.
+     */
+    private static boolean isTouchingRegion(double x1, double y1, double x2, double y2,
+                                            double[] lngs, double[] lats, int count) {
+        var inside = true;
+        for (int i = 0; i < count && inside; i++) {
+            // Anticlockwise corners put every point of the region on the left of each side, or on the side itself.
+            inside = cross(lngs[i], lats[i], lngs[(i + 1) % count], lats[(i + 1) % count], x1, y1) >= 0;
+        }
+        if (inside) {
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            var j = (i + 1) % count;
+            if (cross(x1, y1, x2, y2, lngs[i], lats[i]) * cross(x1, y1, x2, y2, lngs[j], lats[j]) <= 0 &&
+                    cross(lngs[i], lats[i], lngs[j], lats[j], x1, y1) *
+                            cross(lngs[i], lats[i], lngs[j], lats[j], x2, y2) <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method calculates the cross product of (x2, y2) - (x1, y1) and (x3, y3) - (x1, y1), which is positive if
+     * (x3, y3) is on the left of the line (x1, y1)->(x2, y2).
+     */
+    private static double cross(double x1, double y1, double x2, double y2, double x3, double y3) {
+        return (x2 - x1) * (y3 - y1) - (y2 - y1) * (x3 - x1);
+    }
+
+    /**
+     * This method returns the ids of the no-fly zone edges that could intersect the line l1->l2. Every edge which does
+     * intersect the line is among them.
+     *
+     * @param l1 Coordinates for line l1->l2.
+     * @param l2 Coordinates for line l1->l2.
+     * @return Sorted list of candidate edge ids, each of which can be passed to getEdgeStart and getEdgeEnd.
+     */
+    public List<Integer> getCandidateEdges(LngLat l1, LngLat l2) {
+        var candidates = new BitSet(edgeStarts.length);
+        if (edgeStarts.length > 0) {
+            forEachCell(l1, l2, (cell, x1, y1, x2, y2) -> {
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    candidates.set(cellEdges[i]);
+                }
+                return false;
+            });
+        }
+        return candidates.stream().boxed().toList();
+    }
+
+    public LngLat getEdgeStart(int edge) {
+        return edgeStarts[edge];
+    }
+
+    public LngLat getEdgeEnd(int edge) {
+        return edgeEnds[edge];
+    }
+
+    @Override
+    public String toString() {
+        return "NoFlyZoneIndex{" +
+                "noFlyZones=" + noFlyZones.size() +
+                ", edges=" + edgeStarts.length +
+                ", grid=" + columns + "x" + rows +
+                '}';
+    }
+}
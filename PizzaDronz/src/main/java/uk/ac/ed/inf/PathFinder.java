@@ -4,21 +4,47 @@ import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class deals with calculating a list of moves that will get the drone to visit each node provided by the A-star
  * search algorithm. It also sets the tick duration for every move calculated.
+ * The position of the drone during a calculation is kept in a Cursor for that call rather than in the PathFinder, so
+ * a single PathFinder can calculate moves on many threads at once.
  */
 public class PathFinder {
-    private long startingTick;
-    private LngLat currCoord;
+    private final long startingTick;
+    private final LongAdder evaluatedCandidates = new LongAdder();
+    private final LongAdder chosenMoves = new LongAdder();
+    // Cache of the legs planned before, or null to plan every leg.
+    private final LegCache legCache;
 
     /**
-     * This method initialises the starting tick to a value on the first call (In nanoseconds).
+     * This constructor creates a PathFinder which plans every leg.
      */
-    private void setStartingTick() {
-        if (startingTick == 0) {
-            startingTick = Clock.tick(Clock.systemDefaultZone(), Duration.ofNanos(1)).instant().getNano();
+    public PathFinder() {
+        this(null);
+    }
+
+    /**
+     * This constructor creates a PathFinder which looks up every leg in the given cache before planning it, and adds
+     * the legs it plans to the cache.
+     *
+     * @param legCache Cache of legs, which may be shared with other PathFinder objects.
+     */
+    public PathFinder(LegCache legCache) {
+        this.legCache = legCache;
+        startingTick = Clock.tick(Clock.systemDefaultZone(), Duration.ofNanos(1)).instant().getNano();
+    }
+
+    /**
+     * This class holds the position of the drone while the moves of a single call are calculated.
+     */
+    private static final class Cursor {
+        private LngLat coord;
+
+        private Cursor(LngLat coord) {
+            this.coord = coord;
         }
     }
 
@@ -32,54 +58,74 @@ public class PathFinder {
     }
 
     /**
-     * This method finds the next move that will get this object's currCoord closest to the destination by avoiding
-     * no-fly zones and travelling in one of 16 compass directions.
+     * This method repeatedly finds the move that will get the cursor closest to the destination by avoiding
+     * no-fly zones and travelling in one of 16 compass directions, until it is close to the destination.
+     * The moves are simulated by a MoveKernel on primitive coordinates, and a Move object is only created for each move
+     * that is output. If the PathFinder has a leg cache, the directions of a leg planned before are replayed instead.
      *
+     * @param cursor      Position of the drone, which is moved to the end of the leg.
      * @param destination LngLat coordinates of the destination.
-     * @param orderNo     Order number of the current delivery
-     * @param noFlyZones  List of no-fly zones to avoid.
-     * @return A new Move object that contains the current coordinates, the next move, order number and elapsed duration
-     * in milliseconds.
+     * @param orderNo     Order number of the current delivery.
+     * @param noFlyZones  Spatial index over the no-fly zones to avoid.
+     * @param maxMoves    Number of moves after which steering gives up.
+     * @return A list of Move objects that represents the moves needed to get from the cursor to destination, or null
+     * if steering did not get close to it within maxMoves moves.
      */
-    private Move travelNextMove(LngLat destination, String orderNo, List<Polygon> noFlyZones) {
-        setStartingTick();
-        Double minDist = Double.POSITIVE_INFINITY;
-        Direction minDir = null;
-        for (var d : Direction.values()) {
-            var next = currCoord.nextPosition(d);
-            if (noFlyZones != null && !noFlyZones.isEmpty()) {
-                if (noFlyZones.stream().anyMatch(nfz -> nfz.isLineIntersectingNfz(currCoord, next))) {
-                    continue;
-                }
+    private List<Move> travelOneWayPath(Cursor cursor, LngLat destination, String orderNo, NoFlyZoneIndex noFlyZones,
+                                        int maxMoves) {
+        List<Move> moves = new ArrayList<>();
+        var kernel = MoveKernel.createMoveKernel(noFlyZones);
+        kernel.moveTo(cursor.coord);
+        var cached = legCache == null ? null :
+                legCache.get(LegCache.Planner.STEERED, noFlyZones, cursor.coord, destination);
+        if (cached != null && cached.size() > maxMoves) {
+            return null; // Steering got there before, but not within maxMoves moves.
+        }
+        if (cached != null) {
+            // Replaying the directions with the kernel gives exactly the coordinates of the moves that were planned.
+            for (var d : cached) {
+                moves.add(new Move(kernel.getCoord(), d, orderNo, getTiming()));
+                kernel.step(d);
             }
-            // We choose the direction that takes the drone closest to the destination.
-            Double distance = Math.min(minDist, next.distanceTo(destination));
-            if (distance < minDist) {
-                minDir = d;
-                minDist = distance;
+            cursor.coord = kernel.getCoord();
+            return moves;
+        }
+        double destLng = destination.lng();
+        double destLat = destination.lat();
+        while (!kernel.isCloseTo(destLng, destLat)) {
+            if (moves.size() == maxMoves) {
+                return null;
             }
+            // We choose the direction that takes the drone closest to the destination.
+            var d = kernel.findBestDirection(destLng, destLat);
+            moves.add(new Move(kernel.getCoord(), d, orderNo, getTiming()));
+            kernel.step(d);
+        }
+        if (legCache != null) {
+            legCache.put(LegCache.Planner.STEERED, noFlyZones, cursor.coord, destination,
+                    moves.stream().map(Move::direction).toList());
         }
-        var coord = new LngLat(currCoord.lng(), currCoord.lat());
-        currCoord = currCoord.nextPosition(minDir);
-        return new Move(coord, minDir, orderNo, getTiming());
+        cursor.coord = kernel.getCoord();
+        evaluatedCandidates.add(kernel.getEvaluatedCandidates());
+        chosenMoves.add(kernel.getChosenMoves());
+        return moves;
     }
 
     /**
-     * This method repeatedly calls travelNextMove to travel from this object's currCoord to the destination by avoiding
-     * no-fly zones.
+     * This method calculates the moves needed to travel from the startCoord until the drone is close to the
+     * destination, without the hover and the return path. It lets a PathSmoother find out where the drone stops.
+     * Greedy steering can get stuck against a no-fly zone when the destination is not in sight, so it gives up after
+     * the given number of moves.
      *
+     * @param startCoord  Starting coordinates.
      * @param destination LngLat coordinates of the destination.
-     * @param orderNo     Order number of the current delivery.
-     * @param noFlyZones  List of no-fly zones to avoid.
-     * @return A list of Move objects that represents the moves needed to get from currCoord to destination.
+     * @param noFlyZones  Spatial index over the no-fly zones to avoid.
+     * @param maxMoves    Number of moves after which steering gives up.
+     * @return A list of Move objects that represents the moves needed to get from startCoord to destination, or null
+     * if steering did not get close to it within maxMoves moves.
      */
-    private List<Move> travelOneWayPath(LngLat destination, String orderNo,
-                                        List<Polygon> noFlyZones) {
-        List<Move> moves = new ArrayList<>();
-        while (!currCoord.closeTo(destination)) {
-            moves.add(travelNextMove(destination, orderNo, noFlyZones));
-        }
-        return moves;
+    List<Move> travelOneWay(LngLat startCoord, LngLat destination, NoFlyZoneIndex noFlyZones, int maxMoves) {
+        return travelOneWayPath(new Cursor(startCoord), destination, "", noFlyZones, maxMoves);
     }
 
     /**
@@ -90,13 +136,14 @@ public class PathFinder {
      * This method does not return a NullPointerException error, since the list of moves when this method is called will
      * contain at least one hover move. Thus, the for-loop will terminate immediately and move onto the next method.
      *
+     * @param cursor     Position of the drone, which is moved back to startCoord.
      * @param moves      List of moves to reverse.
      * @param startCoord The coordinate to return to.
      * @param orderNo    Order number of the current delivery.
      * @return A list of Move objects that represents the moves needed to get from destination to the
      * starting coordinates.
      */
-    private List<Move> travelReversePath(List<Move> moves, LngLat startCoord, String orderNo) {
+    private List<Move> travelReversePath(Cursor cursor, List<Move> moves, LngLat startCoord, String orderNo) {
         List<Move> newMoves = new ArrayList<>();
         for (int i = moves.size() - 1; i > 0; i--) {
             var prevCoord = moves.get(i).coordinates();
@@ -104,19 +151,20 @@ public class PathFinder {
             var oppositeDir = Direction.reverseDirection(previousDir);
             newMoves.add(new Move(prevCoord, oppositeDir, orderNo, getTiming()));
         }
-        currCoord = startCoord;
+        cursor.coord = startCoord;
         return newMoves;
     }
 
     /**
      * This method returns a hover move which has a null direction.
      *
+     * @param cursor  Position of the drone.
      * @param orderNo Order number of the current delivery.
      * @return A Move object that contains the current coordinates, a null direction enum, order number and duration
      * elapsed since beginning of route calculation.
      */
-    private Move hover(String orderNo) {
-        return new Move(currCoord, null, orderNo, getTiming());
+    private Move hover(Cursor cursor, String orderNo) {
+        return new Move(cursor.coord, null, orderNo, getTiming());
     }
 
     /**
@@ -131,14 +179,65 @@ public class PathFinder {
      * and then back.
      */
     public List<Move> travel(LngLat startCoord, List<LngLat> nodePath, String orderNo, List<Polygon> noFlyZones) {
+        return travel(startCoord, nodePath, orderNo, NoFlyZoneIndex.createNoFlyZoneIndex(noFlyZones));
+    }
+
+    /**
+     * This method calculates the moves needed to travel from the startCoord to the destination and then back by
+     * avoiding the no-fly zones of an existing spatial index.
+     *
+     * @param startCoord Starting coordinates.
+     * @param nodePath   A list of LngLat coordinates that need to be visited for the shortest path.
+     * @param orderNo    Order number of the current delivery.
+     * @param noFlyZones Spatial index over the no-fly zones to avoid.
+     * @return A list of Move objects that represents the moves needed to travel from startCoord to the destination
+     * and then back.
+     */
+    public List<Move> travel(LngLat startCoord, List<LngLat> nodePath, String orderNo, NoFlyZoneIndex noFlyZones) {
         List<Move> moves = new ArrayList<>();
-        currCoord = startCoord;
+        var cursor = new Cursor(startCoord);
         for (var coord : nodePath) {
-            moves.addAll(travelOneWayPath(coord, orderNo, noFlyZones));
+            moves.addAll(travelOneWayPath(cursor, coord, orderNo, noFlyZones, Integer.MAX_VALUE));
+        }
+        moves.add(hover(cursor, orderNo));
+        moves.addAll(travelReversePath(cursor, moves, startCoord, orderNo));
+        moves.add(hover(cursor, orderNo));
+        return moves;
+    }
+
+    /**
+     * This method calculates the moves needed to travel from the startCoord to the destination and then back, using a
+     * LatticePlanner to find the fewest moves rather than steering towards the nodes of a path one move at a time.
+     * If the PathFinder has a leg cache, a plan from an earlier call or run is reused.
+     *
+     * @param startCoord  Starting coordinates.
+     * @param destination Coordinates of the destination, e.g. a restaurant.
+     * @param orderNo     Order number of the current delivery.
+     * @param planner     Lattice planner for the map.
+     * @return A list of Move objects that represents the moves needed to travel from startCoord to the destination
+     * and then back, or null if the planner could not find a plan.
+     */
+    public List<Move> travel(LngLat startCoord, LngLat destination, String orderNo, LatticePlanner planner) {
+        var plan = legCache == null ? null :
+                legCache.get(LegCache.Planner.LATTICE, planner.getNoFlyZoneIndex(), startCoord, destination);
+        if (plan == null) {
+            plan = planner.plan(startCoord, destination);
+            if (plan == null) {
+                return null;
+            }
+            if (legCache != null) {
+                legCache.put(LegCache.Planner.LATTICE, planner.getNoFlyZoneIndex(), startCoord, destination, plan);
+            }
+        }
+        List<Move> moves = new ArrayList<>();
+        var cursor = new Cursor(startCoord);
+        for (var d : plan) {
+            moves.add(new Move(cursor.coord, d, orderNo, getTiming()));
+            cursor.coord = cursor.coord.nextPosition(d);
         }
-        moves.add(hover(orderNo));
-        moves.addAll(travelReversePath(moves, startCoord, orderNo));
-        moves.add(hover(orderNo));
+        moves.add(hover(cursor, orderNo));
+        moves.addAll(travelReversePath(cursor, moves, startCoord, orderNo));
+        moves.add(hover(cursor, orderNo));
         return moves;
     }
 
@@ -157,4 +256,32 @@ public class PathFinder {
         }
         return newMoves;
     }
+
+    /**
+     * This method gives a shared route to an order, without copying its moves. Every move of the returned flight has
+     * the given order number and the time elapsed when this method was called.
+     *
+     * @param orderNo Order number of the current delivery.
+     * @param route   Route calculated before, which may be shared by many orders.
+     * @return A Flight object for the order.
+     */
+    public Flight travelPresetRoute(String orderNo, Route route) {
+        return new Flight(route, orderNo, getTiming());
+    }
+
+    /**
+     * @return Number of candidate moves that have been evaluated while steering along paths with this object.
+     */
+    public long getEvaluatedCandidates() {
+        return evaluatedCandidates.sum();
+    }
+
+    /**
+     * @return Average number of candidate moves evaluated for each move steered with this object, or 0 if there were no
+     * such moves.
+     */
+    public double getCandidatesPerMove() {
+        var moves = chosenMoves.sum();
+        return moves == 0 ? 0.0 : (double) evaluatedCandidates.sum() / moves;
+    }
 }
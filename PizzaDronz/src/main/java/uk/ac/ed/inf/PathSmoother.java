@@ -0,0 +1,219 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class post-processes the list of nodes from Graph.getPath before PathFinder turns it into moves.
+ * It first shortcuts the path from the position the drone is actually at, in the style of Theta*: the drone heads
+ * straight for the furthest node it can see, rather than for the next one. It then snaps each corner of the path onto
+ * the lattice of the drone's moves, so that the leg up to the corner is flown in a single compass direction instead of
+ * zig-zagging between two of them, and the next leg starts from a known position.
+ * The number of moves of the smoothed path is compared with the number of moves of the original path by simulating
+ * both, and the original path is kept if smoothing does not save any moves.
+ */
+public class PathSmoother {
+    // Length of a single move of the drone, in degrees.
+    private static final double STEP = 0.00015;
+    // How many moves more or fewer than the distance to a corner a snapped leg may have.
+    private static final int SNAP_RANGE = 3;
+    // How many times the moves of a straight flight a simulated leg may take before steering along it is given up.
+    private static final int MAX_DETOUR = 2;
+
+    private final NoFlyZoneIndex noFlyZones;
+    // Simulates the legs of the paths. A PathFinder can calculate moves on many threads at once, so one is enough.
+    private final PathFinder pathFinder = new PathFinder();
+
+    private PathSmoother(NoFlyZoneIndex noFlyZones) {
+        this.noFlyZones = noFlyZones;
+    }
+
+    /**
+     * This is a static factory method which creates a new PathSmoother object.
+     *
+     * @param noFlyZones Spatial index over the no-fly zones to avoid.
+     * @return A new PathSmoother object.
+     */
+    public static PathSmoother createPathSmoother(NoFlyZoneIndex noFlyZones) {
+        return new PathSmoother(noFlyZones);
+    }
+
+    /**
+     * This record holds a smoothed path together with the number of moves needed to fly the original and the smoothed
+     * path there and back.
+     *
+     * @param nodePath      List of coordinates to pass to PathFinder.travel.
+     * @param originalMoves Number of moves needed for the original path.
+     * @param smoothedMoves Number of moves needed for nodePath.
+     */
+    public record SmoothedPath(List<LngLat> nodePath, int originalMoves, int smoothedMoves) {
+        /**
+         * @return Number of moves saved by smoothing the path.
+         */
+        public int getMovesSaved() {
+            return originalMoves - smoothedMoves;
+        }
+    }
+
+    /**
+     * This method smooths the path from the start through the given nodes and checks how many moves it saves.
+     *
+     * @param startCoord Starting coordinates of the drone.
+     * @param nodePath   List of nodes from Graph.getPath, ending at the destination.
+     * @return The smoothed path, or the original path if smoothing does not save any moves.
+     */
+    public SmoothedPath smooth(LngLat startCoord, List<LngLat> nodePath) {
+        var originalMoves = pathFinder.travel(startCoord, nodePath, "", noFlyZones).size();
+        if (nodePath.isEmpty()) {
+            return new SmoothedPath(nodePath, originalMoves, originalMoves);
+        }
+        var smoothed = smoothPath(startCoord, nodePath);
+        var smoothedMoves = smoothed == null ? -1 : countMoves(startCoord, smoothed);
+        if (smoothedMoves == -1 || smoothedMoves >= originalMoves) {
+            return new SmoothedPath(nodePath, originalMoves, originalMoves);
+        }
+        return new SmoothedPath(smoothed, originalMoves, smoothedMoves);
+    }
+
+    /**
+     * This method counts the moves PathFinder.travel needs for the path there and back: the moves there, a hover, the
+     * same number of moves back and another hover.
+     *
+     * @return Number of moves, or -1 if steering along a leg of the path gets stuck.
+     */
+    private int countMoves(LngLat startCoord, List<LngLat> nodePath) {
+        var coord = startCoord;
+        var count = 0;
+        for (var node : nodePath) {
+            var moves = travelOneWay(coord, node);
+            if (moves == null) {
+                return -1;
+            }
+            count += moves.size();
+            coord = getStop(coord, moves);
+        }
+        return count * 2 + 2;
+    }
+
+    /**
+     * This method steers from the given coordinates to the node, giving up once it takes MAX_DETOUR times the moves of
+     * a straight flight.
+     *
+     * @return The moves, or null if steering gave up.
+     */
+    private List<Move> travelOneWay(LngLat coord, LngLat node) {
+        var maxMoves = MAX_DETOUR * (int) Math.ceil(coord.distanceTo(node) / STEP) + SNAP_RANGE;
+        return pathFinder.travelOneWay(coord, node, noFlyZones, maxMoves);
+    }
+
+    /**
+     * This method builds the smoothed list of nodes. The anchor is the exact position of the drone at the start of
+     * each leg, which is found by simulating the leg with PathFinder, so that every shortcut is tested from where the
+     * drone really is rather than from the node it was heading for.
+     *
+     * @param startCoord Starting coordinates of the drone.
+     * @param nodePath   List of nodes from Graph.getPath, ending at the destination.
+     * @return List of coordinates to pass to PathFinder.travel, or null if no leg to a corner could be simulated.
+     */
+    private List<LngLat> smoothPath(LngLat startCoord, List<LngLat> nodePath) {
+        List<LngLat> smoothed = new ArrayList<>();
+        var anchor = startCoord;
+        var i = 0;
+        while (i < nodePath.size()) {
+            // Line-of-sight shortcut: aim for the furthest node that can be seen from the anchor.
+            var j = nodePath.size() - 1;
+            while (j > i && !Graph.isVisible(anchor, nodePath.get(j), noFlyZones)) {
+                j--;
+            }
+            var corner = nodePath.get(j);
+            if (j == nodePath.size() - 1) {
+                smoothed.add(corner);
+                break;
+            }
+            var leg = snap(anchor, corner, nodePath.subList(j + 1, nodePath.size()));
+            if (leg == null) {
+                return null;
+            }
+            smoothed.add(leg[0]);
+            anchor = leg[1];
+            i = j + 1;
+        }
+        return smoothed;
+    }
+
+    /**
+     * This method snaps a corner of the path onto the lattice of moves from the anchor. It tries every compass direction,
+     * with a few numbers of moves around the distance to the corner, so the stop may be on either side of the corner
+     * and need not lie on the line to it. A stop is only used if the drone can fly to it in a straight line and can see
+     * the next node from it.
+     * Each stop is scored by the moves needed to reach it, plus the moves PathFinder needs from it to the next node,
+     * plus the distance in moves from where that leg ends to the node after, and the stop with the lowest score is
+     * kept, unless steering towards the corner itself scores lower. Only the next leg is simulated, so that snapping a
+     * corner does not steer through the whole rest of the path for every stop; smooth still counts the moves of the
+     * whole path before it keeps the smoothed one.
+     * PathFinder stops once the drone is close to a node, which is one move before it, so the node returned for a
+     * snapped leg is one move past the stop along the same direction.
+     *
+     * @param anchor Exact position of the drone at the start of the leg.
+     * @param corner Node at the end of the leg.
+     * @param rest   Nodes after the corner, ending at the destination.
+     * @return Array of the node to fly to and the position where the drone stops, or null if steering to the corner
+     * gets stuck and there is no stop to use instead.
+     */
+    private LngLat[] snap(LngLat anchor, LngLat corner, List<LngLat> rest) {
+        var next = rest.get(0);
+        var after = rest.size() > 1 ? rest.get(1) : null;
+        LngLat[] best = null;
+        var bestScore = Double.POSITIVE_INFINITY;
+        var steered = travelOneWay(anchor, corner);
+        if (steered != null) {
+            var steeredStop = getStop(anchor, steered);
+            best = new LngLat[]{corner, steeredStop};
+            bestScore = steered.size() + scoreNextLeg(steeredStop, next, after);
+        }
+
+        var length = anchor.distanceTo(corner) / STEP;
+        var first = Math.max(1, (int) Math.floor(length) - SNAP_RANGE);
+        var last = (int) Math.ceil(length) + SNAP_RANGE;
+        for (var d : Direction.values()) {
+            var stop = anchor;
+            for (int moves = 1; moves <= last; moves++) {
+                stop = stop.nextPosition(d);
+                if (moves < first || !Graph.isVisible(anchor, stop, noFlyZones) ||
+                        !Graph.isVisible(stop, next, noFlyZones)) {
+                    continue;
+                }
+                var score = moves + scoreNextLeg(stop, next, after);
+                if (score < bestScore) {
+                    bestScore = score;
+                    best = new LngLat[]{stop.nextPosition(d), stop};
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This method counts the moves PathFinder needs to steer from the given coordinates to the next node, one way, and
+     * adds the straight-line distance in moves from where the drone stops to the node after it, if there is one.
+     * The score is infinite if steering to the next node gets stuck.
+     */
+    private double scoreNextLeg(LngLat coord, LngLat next, LngLat after) {
+        var moves = travelOneWay(coord, next);
+        if (moves == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (after == null) {
+            return moves.size();
+        }
+        return moves.size() + getStop(coord, moves).distanceTo(after) / STEP;
+    }
+
+    private static LngLat getStop(LngLat coord, List<Move> moves) {
+        if (moves.isEmpty()) {
+            return coord;
+        }
+        var last = moves.get(moves.size() - 1);
+        return last.coordinates().nextPosition(last.direction());
+    }
+}
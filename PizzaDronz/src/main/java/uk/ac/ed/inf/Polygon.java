@@ -11,13 +11,62 @@ import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * This record contains a list of LngLat objects as coordinates of its vertices, and has methods to determine if a point
+ * This class contains a list of LngLat objects as coordinates of its vertices, and has methods to determine if a point
  * is inside a Polygon, which depends on whether it is a central area or a no-fly zone.
+ * The axis-aligned bounding box of the vertices is calculated once when the polygon is created, so that the geometry
+ * tests can return early for points and lines which are nowhere near the polygon. Each polygon counts how many tests it
+ * answered and how many of them were rejected by its bounding box.
+ * The winding order of the vertices is also worked out once, so that convex and reflex vertices can be told apart.
  */
 @JsonDeserialize(using = Polygon.PolygonDeserializer.class)
-public record Polygon(List<LngLat> coordinates) {
+public final class Polygon {
+    private final List<LngLat> coordinates;
+    private final double minLng;
+    private final double minLat;
+    private final double maxLng;
+    private final double maxLat;
+    // Winding order of the vertices, using the same values as calcCollinear: 1 if anticlockwise, 2 if clockwise and 0
+    // if the polygon has no area.
+    private final int orientation;
+
+    // Counters for the geometry tests. LongAdder keeps them cheap when many threads test the same polygon.
+    private final LongAdder insideChecks = new LongAdder();
+    private final LongAdder insideRejects = new LongAdder();
+    private final LongAdder lineChecks = new LongAdder();
+    private final LongAdder lineRejects = new LongAdder();
+
+    /**
+     * This constructor creates a polygon from its vertices and calculates its bounding box and winding order.
+     * The vertices are copied, so that changing the given list afterwards cannot leave the bounding box out of date.
+     *
+     * @param coordinates List of vertices in LngLat format.
+     */
+    public Polygon(List<LngLat> coordinates) {
+        this.coordinates = List.copyOf(coordinates);
+        double lngLo = Double.POSITIVE_INFINITY;
+        double latLo = Double.POSITIVE_INFINITY;
+        double lngHi = Double.NEGATIVE_INFINITY;
+        double latHi = Double.NEGATIVE_INFINITY;
+        double area = 0.0; // Twice the signed area, positive if the vertices are anticlockwise.
+        var n = coordinates.size();
+        for (int i = 0; i < n; i++) {
+            var c = coordinates.get(i);
+            var d = coordinates.get((i + 1) % n);
+            lngLo = Math.min(lngLo, c.lng());
+            latLo = Math.min(latLo, c.lat());
+            lngHi = Math.max(lngHi, c.lng());
+            latHi = Math.max(latHi, c.lat());
+            area += c.lng() * d.lat() - d.lng() * c.lat();
+        }
+        minLng = lngLo;
+        minLat = latLo;
+        maxLng = lngHi;
+        maxLat = latHi;
+        orientation = area > 0 ? 1 : area < 0 ? 2 : 0;
+    }
 
 
     /**
@@ -122,7 +171,14 @@ public record Polygon(List<LngLat> coordinates) {
      * 2 if l2->l3 is clockwise to l1->l2.
      */
     static int calcCollinear(LngLat l1, LngLat l2, LngLat l3) {
-        Double ans = ((l2.lat() - l1.lat()) * (l3.lng() - l2.lng())) - ((l3.lat() - l2.lat()) * (l2.lng() - l1.lng()));
+        return calcCollinear(l1.lng(), l1.lat(), l2.lng(), l2.lat(), l3.lng(), l3.lat());
+    }
+
+    /**
+     * This method is calcCollinear on primitive coordinates.
+     */
+    static int calcCollinear(double x1, double y1, double x2, double y2, double x3, double y3) {
+        double ans = ((y2 - y1) * (x3 - x2)) - ((y3 - y2) * (x2 - x1));
         if (ans == 0) {
             return 0;
         } else if (ans < 0) {
@@ -177,14 +233,25 @@ public record Polygon(List<LngLat> coordinates) {
      * @return A boolean value on whether line l1->l2 intersects line l3->l4.
      */
     static boolean areLinesIntersectingNonCollinear(LngLat l1, LngLat l2, LngLat l3, LngLat l4) {
-        if (l1.equals(l3) || l1.equals(l4) || l2.equals(l3) || l2.equals(l4)) {
+        return areLinesIntersectingNonCollinear(l1.lng(), l1.lat(), l2.lng(), l2.lat(),
+                l3.lng(), l3.lat(), l4.lng(), l4.lat());
+    }
+
+    /**
+     * This method is areLinesIntersectingNonCollinear on primitive coordinates, for queries which should not create
+     * any objects. Points are equal in the same way as LngLat.equals.
+     */
+    static boolean areLinesIntersectingNonCollinear(double x1, double y1, double x2, double y2,
+                                                    double x3, double y3, double x4, double y4) {
+        if (isSamePoint(x1, y1, x3, y3) || isSamePoint(x1, y1, x4, y4) ||
+                isSamePoint(x2, y2, x3, y3) || isSamePoint(x2, y2, x4, y4)) {
             return false;
         }
 
-        int d1 = calcCollinear(l1, l2, l3); // Check if l3 is collinear with l1->l2
-        int d2 = calcCollinear(l1, l2, l4); // Check if l4 is collinear with l1->l2
-        int d3 = calcCollinear(l3, l4, l1); // Check if l1 is collinear with l3->l4
-        int d4 = calcCollinear(l3, l4, l2); // Check if l2 is collinear with l3->l4
+        int d1 = calcCollinear(x1, y1, x2, y2, x3, y3); // Check if l3 is collinear with l1->l2
+        int d2 = calcCollinear(x1, y1, x2, y2, x4, y4); // Check if l4 is collinear with l1->l2
+        int d3 = calcCollinear(x3, y3, x4, y4, x1, y1); // Check if l1 is collinear with l3->l4
+        int d4 = calcCollinear(x3, y3, x4, y4, x2, y2); // Check if l2 is collinear with l3->l4
 
         if (d1 == 0 || d2 == 0 || d3 == 0 || d4 == 0) {
             return false;
@@ -196,6 +263,10 @@ public record Polygon(List<LngLat> coordinates) {
         return false; // If one point is collinear with a line, return false as travelling along the boundary is fine.
     }
 
+    private static boolean isSamePoint(double x1, double y1, double x2, double y2) {
+        return Double.compare(x1, x2) == 0 && Double.compare(y1, y2) == 0;
+    }
+
     /**
      * This method checks if the line l1->l2 intersects fully with an edge of this polygon. Intersecting in this method
      * does not refer to one end of the line lying on another.
@@ -205,6 +276,11 @@ public record Polygon(List<LngLat> coordinates) {
      * @return A boolean value on whether the line intersects with an edge of a polygon.
      */
     boolean isLineIntersectingNfz(LngLat l1, LngLat l2) {
+        lineChecks.increment();
+        if (!isOverlappingBoundingBox(l1, l2)) { // A line can only cross an edge inside the bounding box.
+            lineRejects.increment();
+            return false;
+        }
         var n = coordinates.size();
         for (int i = 0; i < n; i++) {
             var v1 = coordinates.get(i);
@@ -217,9 +293,67 @@ public record Polygon(List<LngLat> coordinates) {
         return false;
     }
 
+    /**
+     * This method checks whether the bounding box of the line l1->l2 overlaps the bounding box of this polygon.
+     *
+     * @param l1 Coordinates for line l1->l2.
+     * @param l2 Coordinates for line l1->l2.
+     * @return False if the line is certainly nowhere near the polygon.
+     */
+    boolean isOverlappingBoundingBox(LngLat l1, LngLat l2) {
+        return Math.max(l1.lng(), l2.lng()) >= minLng && Math.min(l1.lng(), l2.lng()) <= maxLng &&
+                Math.max(l1.lat(), l2.lat()) >= minLat && Math.min(l1.lat(), l2.lat()) <= maxLat;
+    }
+
+    /**
+     * This method checks whether the point lies inside or on the bounding box of this polygon.
+     *
+     * @param p Point in question.
+     * @return False if the point is certainly outside the polygon.
+     */
+    boolean isInsideBoundingBox(LngLat p) {
+        return p.lng() >= minLng && p.lng() <= maxLng && p.lat() >= minLat && p.lat() <= maxLat;
+    }
+
+    /**
+     * This method checks whether the vertex with the given index is convex, i.e. the boundary turns the same way as the
+     * polygon winds there. A reflex vertex, or one where the boundary goes straight on, is never a corner that the
+     * shortest path around the polygon needs to bend at.
+     *
+     * @param i Index of the vertex in coordinates.
+     * @return True if the interior angle at the vertex is less than 180 degrees.
+     */
+    boolean isConvexVertex(int i) {
+        var n = coordinates.size();
+        var prev = coordinates.get((i + n - 1) % n);
+        var next = coordinates.get((i + 1) % n);
+        return orientation != 0 && calcCollinear(prev, coordinates.get(i), next) == orientation;
+    }
+
+    /**
+     * This method checks whether the two points are neighbouring vertices of the polygon, i.e. the line between them is
+     * one of its sides. The middle of a side lies on the boundary, where rounding decides isInsidePolygon, so a line
+     * along a side has to be recognised by its ends instead.
+     *
+     * @param l1 One end of the line.
+     * @param l2 Other end of the line.
+     * @return True if the line runs along the boundary of the polygon.
+     */
+    boolean isSide(LngLat l1, LngLat l2) {
+        var n = coordinates.size();
+        for (int i = 0; i < n; i++) {
+            if (coordinates.get(i).equals(l1) &&
+                    (coordinates.get((i + 1) % n).equals(l2) || coordinates.get((i + n - 1) % n).equals(l2))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * This method determines whether the given point is inside the polygon which is constructed from the list of
      * coordinates, and its output varies depending on the context.
+     * Points outside the bounding box of the polygon are rejected straight away.
      *
      * @param p               Point in question.
      * @param allowBoundaries If true, this method returns false if the point is on the boundary. If false, it returns
@@ -234,6 +368,11 @@ public record Polygon(List<LngLat> coordinates) {
         if (n < 3) {
             return false;
         }
+        insideChecks.increment();
+        if (!isInsideBoundingBox(p)) {
+            insideRejects.increment();
+            return false;
+        }
         var maxLngPoint = new LngLat(MAX, p.lat());
 
         // Since we are calculating how many times the point intersects the edges, if the point intersects a vertex,
@@ -263,6 +402,79 @@ public record Polygon(List<LngLat> coordinates) {
         return (count % 2 == 1);
     }
 
+    public List<LngLat> coordinates() {
+        return coordinates;
+    }
+
+    public double getMinLng() {
+        return minLng;
+    }
+
+    public double getMinLat() {
+        return minLat;
+    }
+
+    public double getMaxLng() {
+        return maxLng;
+    }
+
+    public double getMaxLat() {
+        return maxLat;
+    }
+
+    /**
+     * @return Number of times isInsidePolygon has been called on this polygon.
+     */
+    public long getInsideChecks() {
+        return insideChecks.sum();
+    }
+
+    /**
+     * @return Number of isInsidePolygon calls which were answered by the bounding box alone.
+     */
+    public long getInsideRejects() {
+        return insideRejects.sum();
+    }
+
+    /**
+     * @return Number of times isLineIntersectingNfz has been called on this polygon.
+     */
+    public long getLineChecks() {
+        return lineChecks.sum();
+    }
+
+    /**
+     * @return Number of isLineIntersectingNfz calls which were answered by the bounding box alone.
+     */
+    public long getLineRejects() {
+        return lineRejects.sum();
+    }
+
+    /**
+     * This method sets all the geometry test counters of this polygon back to zero.
+     */
+    public void resetCounters() {
+        insideChecks.reset();
+        insideRejects.reset();
+        lineChecks.reset();
+        lineRejects.reset();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Polygon polygon = (Polygon) o;
+
+        return coordinates.equals(polygon.coordinates);
+    }
+
+    @Override
+    public int hashCode() {
+        return coordinates.hashCode();
+    }
+
     @Override
     public String toString() {
         return "Polygon{" +
@@ -0,0 +1,77 @@
+package uk.ac.ed.inf;
+
+import java.util.List;
+
+/**
+ * This class holds the coordinates and directions of a flight path which is flown for many orders, e.g. from Appleton
+ * Tower to a restaurant and back. A route does not change once it has been created, so every order to the same
+ * restaurant shares one Route object and only adds its own order number and tick on top of it, see Flight.
+ */
+public class Route {
+    private final LngLat[] coordinates;
+    // Direction of each move, or null for a hover.
+    private final Direction[] directions;
+    private final LngLat end;
+
+    private Route(LngLat[] coordinates, Direction[] directions) {
+        this.coordinates = coordinates;
+        this.directions = directions;
+        var last = coordinates.length - 1;
+        end = last < 0 ? null : coordinates[last].nextPosition(directions[last]);
+    }
+
+    /**
+     * This is a static factory method which creates a new Route object with the coordinates and directions of the
+     * given moves. Their order numbers and ticks are not kept.
+     *
+     * @param moves List of moves of the flight path.
+     * @return A new Route object.
+     */
+    public static Route createRoute(List<Move> moves) {
+        var coordinates = new LngLat[moves.size()];
+        var directions = new Direction[moves.size()];
+        for (int i = 0; i < moves.size(); i++) {
+            coordinates[i] = moves.get(i).coordinates();
+            directions[i] = moves.get(i).direction();
+        }
+        return new Route(coordinates, directions);
+    }
+
+    /**
+     * @return Number of moves in the route, including hovers.
+     */
+    public int size() {
+        return coordinates.length;
+    }
+
+    /**
+     * @param move Index of a move.
+     * @return Coordinates of the drone at the start of the move.
+     */
+    public LngLat getCoordinates(int move) {
+        return coordinates[move];
+    }
+
+    /**
+     * @param move Index of a move.
+     * @return Direction of the move, or null if the drone hovers.
+     */
+    public Direction getDirection(int move) {
+        return directions[move];
+    }
+
+    /**
+     * @return Coordinates of the drone after the last move, or null if the route has no moves.
+     */
+    public LngLat getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return "Route{" +
+                "moves=" + coordinates.length +
+                ", end=" + end +
+                '}';
+    }
+}
@@ -0,0 +1,428 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * This class generates a synthetic city around Appleton Tower, in the same JSON format as the REST server, so that the
+ * planner can be run at a much larger scale than the REST server's data and without any network access.
+ * The city is a square grid of cells centred on Appleton Tower. Some cells hold a convex no-fly zone, which stays well
+ * inside its cell, so that no two no-fly zones overlap and the streets between the cells are always free. Restaurants
+ * sit on the corners of the cells, which are outside every no-fly zone.
+ * Every restaurant has its own menu of uniquely named pizzas, and orders for a date are generated from the seed and the
+ * date alone, so the same generator always serves the same orders for a given date. A given share of the orders is
+ * invalid, for one of the reasons checked by OrderChecker, spread evenly between the reasons.
+ * The static generateNoFlyZones and generateRestaurants methods lay out the same kind of grid without a whole scenario,
+ * for the tests and benchmarks.
+ */
+public class ScenarioGenerator {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+    // Width of a grid cell, in degrees.
+    private static final double CELL = 0.001;
+    // Largest distance of a no-fly zone vertex from the centre of its cell, as a share of the cell width.
+    private static final double MAX_RADIUS = 0.4;
+    private static final int MIN_VERTICES = 4;
+    private static final int MAX_VERTICES = 10;
+    private static final int MIN_MENU = 2;
+    private static final int MAX_MENU = 6;
+    // Number of cells around Appleton Tower in each direction which make up the central area.
+    private static final int CENTRAL_AREA_CELLS = 4;
+
+    /**
+     * This enum lists the ways in which a generated order can be invalid, one for each check of OrderChecker.
+     */
+    enum Defect {
+        CARD_NUMBER, EXPIRY_DATE, CVV, TOTAL, PIZZA_NOT_DEFINED, PIZZA_COUNT, MULTIPLE_SUPPLIERS, ORDER_NUMBER
+    }
+
+    private final long seed;
+    private final int ordersPerDay;
+    private final double invalidOrderRate;
+    private final int gridSize;
+    private final LngLat origin;
+    private final List<Restaurant> restaurants = new ArrayList<>();
+    private final List<List<LngLat>> noFlyZones = new ArrayList<>();
+    // Defects an invalid order is drawn from, which leaves out MULTIPLE_SUPPLIERS when there is only one restaurant.
+    private final Defect[] defects;
+
+    private ScenarioGenerator(long seed, int restaurantCount, int noFlyZoneCount, int ordersPerDay,
+                              double invalidOrderRate) {
+        this.seed = seed;
+        this.ordersPerDay = ordersPerDay;
+        this.invalidOrderRate = invalidOrderRate;
+        // Big enough for every no-fly zone to have a cell, leaving out the cell of Appleton Tower and half of the rest,
+        // and for every restaurant to have a corner. The grid size is odd, so that Appleton Tower is in a middle cell.
+        var size = (int) Math.ceil(Math.max(Math.sqrt(2.0 * noFlyZoneCount + 1), Math.sqrt(restaurantCount)));
+        gridSize = size % 2 == 0 ? size + 1 : size;
+        origin = new LngLat(APPLETON.lng() - CELL * gridSize / 2.0, APPLETON.lat() - CELL * gridSize / 2.0);
+
+        var random = new Random(seed);
+        initNoFlyZones(random, noFlyZoneCount);
+        initRestaurants(random, restaurantCount);
+        defects = restaurantCount > 1 ? Defect.values() :
+                EnumSet.complementOf(EnumSet.of(Defect.MULTIPLE_SUPPLIERS)).toArray(new Defect[0]);
+    }
+
+    /**
+     * This is a static factory method which creates a new ScenarioGenerator object. One order in ten is invalid.
+     *
+     * @param seed            Seed which decides the whole scenario.
+     * @param restaurantCount Number of restaurants.
+     * @param noFlyZoneCount  Number of no-fly zones.
+     * @param ordersPerDay    Number of orders on each date.
+     * @return A new ScenarioGenerator object.
+     */
+    public static ScenarioGenerator createScenarioGenerator(long seed, int restaurantCount, int noFlyZoneCount,
+                                                            int ordersPerDay) {
+        return createScenarioGenerator(seed, restaurantCount, noFlyZoneCount, ordersPerDay, 0.1);
+    }
+
+    /**
+     * This is a static factory method which creates a new ScenarioGenerator object.
+     *
+     * @param seed             Seed which decides the whole scenario.
+     * @param restaurantCount  Number of restaurants, at least one.
+     * @param noFlyZoneCount   Number of no-fly zones.
+     * @param ordersPerDay     Number of orders on each date.
+     * @param invalidOrderRate Share of the orders which are invalid, between 0 and 1.
+     * @return A new ScenarioGenerator object.
+     */
+    public static ScenarioGenerator createScenarioGenerator(long seed, int restaurantCount, int noFlyZoneCount,
+                                                            int ordersPerDay, double invalidOrderRate) {
+        if (restaurantCount < 1 || noFlyZoneCount < 0 || ordersPerDay < 0 ||
+                invalidOrderRate < 0.0 || invalidOrderRate > 1.0) {
+            throw new IllegalArgumentException("Invalid scenario: " + restaurantCount + " restaurants, " +
+                    noFlyZoneCount + " no-fly zones, " + ordersPerDay + " orders per day, invalid order rate " +
+                    invalidOrderRate + ".");
+        }
+        return new ScenarioGenerator(seed, restaurantCount, noFlyZoneCount, ordersPerDay, invalidOrderRate);
+    }
+
+    /**
+     * This method places the no-fly zones in randomly chosen cells, leaving out the cell of Appleton Tower.
+     * Each no-fly zone is a convex polygon whose vertices are at increasing angles around the centre of its cell.
+     */
+    private void initNoFlyZones(Random random, int noFlyZoneCount) {
+        var middle = gridSize / 2;
+        var cells = IntStream.range(0, gridSize * gridSize)
+                .filter(cell -> cell != middle * gridSize + middle)
+                .boxed().collect(Collectors.toCollection(ArrayList::new));
+        Collections.shuffle(cells, random);
+        for (var cell : cells.subList(0, noFlyZoneCount)) {
+            var cx = origin.lng() + CELL * (cell / gridSize + 0.5);
+            var cy = origin.lat() + CELL * (cell % gridSize + 0.5);
+            var vertices = MIN_VERTICES + random.nextInt(MAX_VERTICES - MIN_VERTICES + 1);
+            noFlyZones.add(createZone(random, cx, cy, vertices, MAX_RADIUS * 0.6, MAX_RADIUS * 0.4));
+        }
+    }
+
+    /**
+     * This method creates the vertices of a convex no-fly zone around the given centre, at increasing angles from a
+     * random rotation. The distance of each vertex from the centre is between minRadius and minRadius + radiusRange
+     * cell widths.
+     */
+    private static List<LngLat> createZone(Random random, double cx, double cy, int vertices, double minRadius,
+                                           double radiusRange) {
+        var rotation = random.nextDouble() * 2 * Math.PI;
+        List<LngLat> coords = new ArrayList<>();
+        for (int k = 0; k < vertices; k++) {
+            var angle = rotation + 2 * Math.PI * k / vertices;
+            var radius = CELL * (minRadius + radiusRange * random.nextDouble());
+            coords.add(new LngLat(cx + radius * Math.cos(angle), cy + radius * Math.sin(angle)));
+        }
+        return coords;
+    }
+
+    /**
+     * This method generates a map of no-fly zones without a whole scenario, for the tests and benchmarks which only need
+     * the geometry. It fills every cell of a gridSize x gridSize grid centred on Appleton Tower with a no-fly zone with
+     * the given number of vertices, except the cells whose centre is less than a cell away from Appleton Tower.
+     *
+     * @param gridSize Number of cells along each side of the grid.
+     * @param vertices Number of vertices of each no-fly zone.
+     * @param seed     Seed of the random number generator.
+     * @return List of no-fly zones.
+     */
+    public static List<Polygon> generateNoFlyZones(int gridSize, int vertices, long seed) {
+        var random = new Random(seed);
+        var origin = new LngLat(APPLETON.lng() - CELL * gridSize / 2.0, APPLETON.lat() - CELL * gridSize / 2.0);
+        List<Polygon> noFlyZones = new ArrayList<>();
+        for (int i = 0; i < gridSize; i++) {
+            for (int j = 0; j < gridSize; j++) {
+                var cx = origin.lng() + CELL * (i + 0.5);
+                var cy = origin.lat() + CELL * (j + 0.5);
+                if (Math.abs(cx - APPLETON.lng()) < CELL && Math.abs(cy - APPLETON.lat()) < CELL) {
+                    continue;
+                }
+                noFlyZones.add(Polygon.fromLngLat(createZone(random, cx, cy, vertices, 0.25, 0.1)));
+            }
+        }
+        return noFlyZones;
+    }
+
+    /**
+     * This method generates restaurant coordinates between the no-fly zones of generateNoFlyZones. Each one is on a
+     * random corner of the cells, moved by a tiny random amount, so two restaurants on the same corner are not equal.
+     *
+     * @param gridSize Number of cells along each side of the grid.
+     * @param count    Number of restaurants.
+     * @param seed     Seed of the random number generator.
+     * @return List of restaurant coordinates.
+     */
+    public static List<LngLat> generateRestaurants(int gridSize, int count, long seed) {
+        var random = new Random(seed);
+        List<LngLat> restaurants = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            var x = random.nextInt(gridSize + 1);
+            var y = random.nextInt(gridSize + 1);
+            restaurants.add(new LngLat(APPLETON.lng() - CELL * gridSize / 2.0 + CELL * x + random.nextDouble() * 1e-5,
+                    APPLETON.lat() - CELL * gridSize / 2.0 + CELL * y + random.nextDouble() * 1e-5));
+        }
+        return restaurants;
+    }
+
+    /**
+     * This method places the restaurants on distinct, randomly chosen corners of the cells, and gives each of them a
+     * menu.
+     */
+    private void initRestaurants(Random random, int restaurantCount) {
+        var corners = IntStream.range(0, (gridSize + 1) * (gridSize + 1)).boxed()
+                .collect(Collectors.toCollection(ArrayList::new));
+        Collections.shuffle(corners, random);
+        for (int i = 0; i < restaurantCount; i++) {
+            var corner = corners.get(i);
+            var coord = new LngLat(origin.lng() + CELL * (corner / (gridSize + 1)),
+                    origin.lat() + CELL * (corner % (gridSize + 1)));
+            var menu = new Menu[MIN_MENU + random.nextInt(MAX_MENU - MIN_MENU + 1)];
+            for (int k = 0; k < menu.length; k++) {
+                menu[k] = Menu.createMenu("Pizza " + i + "-" + k, 500 + 50 * random.nextInt(41));
+            }
+            restaurants.add(new Restaurant("Restaurant " + i, coord, menu));
+        }
+    }
+
+    /**
+     * @return List of restaurants in the scenario.
+     */
+    public List<Restaurant> getRestaurants() {
+        return Collections.unmodifiableList(restaurants);
+    }
+
+    /**
+     * @return List of the no-fly zones in the scenario, each as a list of vertices.
+     */
+    public List<List<LngLat>> getNoFlyZones() {
+        return Collections.unmodifiableList(noFlyZones);
+    }
+
+    /**
+     * This method returns the central area, a square of cells around Appleton Tower, listed anticlockwise.
+     *
+     * @return List of the corners of the central area.
+     */
+    public List<LngLat> getCentralArea() {
+        var half = CELL * (CENTRAL_AREA_CELLS + 0.5);
+        return List.of(new LngLat(APPLETON.lng() - half, APPLETON.lat() + half),
+                new LngLat(APPLETON.lng() - half, APPLETON.lat() - half),
+                new LngLat(APPLETON.lng() + half, APPLETON.lat() - half),
+                new LngLat(APPLETON.lng() + half, APPLETON.lat() + half));
+    }
+
+    /**
+     * This method writes the restaurants in the format of the /restaurants endpoint.
+     *
+     * @param out Stream to write the JSON to. It is not closed.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeRestaurants(OutputStream out) throws IOException {
+        try (var json = createGenerator(out)) {
+            json.writeStartArray();
+            for (var restaurant : restaurants) {
+                json.writeStartObject();
+                json.writeStringField("name", restaurant.name());
+                json.writeNumberField("longitude", restaurant.coord().lng());
+                json.writeNumberField("latitude", restaurant.coord().lat());
+                json.writeArrayFieldStart("menu");
+                for (var menu : restaurant.menu()) {
+                    json.writeStartObject();
+                    json.writeStringField("name", menu.name());
+                    json.writeNumberField("priceInPence", menu.priceInPence());
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    /**
+     * This method writes the no-fly zones in the format of the /noFlyZones endpoint.
+     *
+     * @param out Stream to write the JSON to. It is not closed.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeNoFlyZones(OutputStream out) throws IOException {
+        try (var json = createGenerator(out)) {
+            json.writeStartArray();
+            for (int i = 0; i < noFlyZones.size(); i++) {
+                json.writeStartObject();
+                json.writeStringField("name", "No-fly zone " + i);
+                json.writeArrayFieldStart("coordinates");
+                for (var c : noFlyZones.get(i)) {
+                    json.writeStartArray();
+                    json.writeNumber(c.lng());
+                    json.writeNumber(c.lat());
+                    json.writeEndArray();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    /**
+     * This method writes the central area in the format of the /centralArea endpoint.
+     *
+     * @param out Stream to write the JSON to. It is not closed.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeCentralArea(OutputStream out) throws IOException {
+        var names = new String[]{"North West", "South West", "South East", "North East"};
+        var corners = getCentralArea();
+        try (var json = createGenerator(out)) {
+            json.writeStartArray();
+            for (int i = 0; i < corners.size(); i++) {
+                json.writeStartObject();
+                json.writeStringField("name", names[i]);
+                json.writeNumberField("longitude", corners.get(i).lng());
+                json.writeNumberField("latitude", corners.get(i).lat());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    /**
+     * This method writes the orders of a date in the format of the /orders/{date} endpoint. The orders are generated
+     * while they are written, so even a very large number of orders takes little memory.
+     *
+     * @param date Date in YYYY-MM-dd format.
+     * @param out  Stream to write the JSON to. It is not closed.
+     * @throws IOException If the stream cannot be written to.
+     * @throws java.time.format.DateTimeParseException If the date is not in YYYY-MM-dd format.
+     */
+    public void writeOrders(String date, OutputStream out) throws IOException {
+        var day = LocalDate.parse(date).toEpochDay();
+        var random = new Random(seed ^ (day * 0x9E3779B97F4A7C15L));
+        try (var json = createGenerator(out)) {
+            json.writeStartArray();
+            for (int i = 0; i < ordersPerDay; i++) {
+                writeOrder(json, random, date, day, i);
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private static JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return new JsonFactory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * This method generates and writes a single order. A valid order has one to four pizzas from one restaurant, the
+     * right total including the delivery fee, a unique hexadecimal order number and a card which passes every check.
+     * An invalid order is a valid order with one defect.
+     */
+    private void writeOrder(JsonGenerator json, Random random, String date, long day, int i) throws IOException {
+        var restaurant = restaurants.get(random.nextInt(restaurants.size()));
+        List<Menu> items = new ArrayList<>();
+        var count = 1 + random.nextInt(4);
+        for (int k = 0; k < count; k++) {
+            items.add(restaurant.menu()[random.nextInt(restaurant.menu().length)]);
+        }
+        // Unique among the orders of a day, since fewer than 2^32 orders are generated.
+        var orderNo = String.format("%08X", (day * 1_000_003L + i) & 0xFFFFFFFFL);
+        var cardNumber = generateCardNumber(random);
+        // Expires in the 2090s, so that the card stays valid whenever the scenario is run.
+        var expiry = String.format("%02d/%02d", 1 + random.nextInt(12), 90 + random.nextInt(10));
+        var cvv = String.format("%03d", random.nextInt(1000));
+        var extra = 0;
+
+        if (random.nextDouble() < invalidOrderRate) {
+            switch (defects[random.nextInt(defects.length)]) {
+                case CARD_NUMBER -> {
+                    var last = cardNumber.length() - 1;
+                    var check = (Character.getNumericValue(cardNumber.charAt(last)) + 1) % 10;
+                    cardNumber = cardNumber.substring(0, last) + check;
+                }
+                case EXPIRY_DATE -> // Expired in the 2010s.
+                        expiry = String.format("%02d/%02d", 1 + random.nextInt(12), 10 + random.nextInt(10));
+                case CVV -> cvv = cvv.substring(0, 2);
+                case TOTAL -> extra = 1 + random.nextInt(100);
+                case PIZZA_NOT_DEFINED -> items.set(0, Menu.createMenu("Undefined pizza", 1000));
+                case PIZZA_COUNT -> {
+                    while (items.size() <= 4) {
+                        items.add(restaurant.menu()[random.nextInt(restaurant.menu().length)]);
+                    }
+                }
+                case MULTIPLE_SUPPLIERS -> { // Only drawn with more than one restaurant.
+                    var other = restaurants.get(random.nextInt(restaurants.size()));
+                    if (other == restaurant) {
+                        other = restaurants.get((restaurants.indexOf(restaurant) + 1) % restaurants.size());
+                    }
+                    items.add(other.menu()[random.nextInt(other.menu().length)]);
+                    if (items.size() > 4) {
+                        items.remove(1);
+                    }
+                }
+                case ORDER_NUMBER -> orderNo = "Z" + orderNo.substring(1);
+            }
+        }
+
+        json.writeStartObject();
+        json.writeStringField("orderNo", orderNo);
+        json.writeStringField("orderDate", date);
+        json.writeStringField("customer", "Customer " + i);
+        json.writeStringField("creditCardNumber", cardNumber);
+        json.writeStringField("creditCardExpiry", expiry);
+        json.writeStringField("cvv", cvv);
+        json.writeNumberField("priceTotalInPence",
+                items.stream().mapToInt(Menu::priceInPence).sum() + Order.getDeliveryFee() + extra);
+        json.writeArrayFieldStart("orderItems");
+        for (var item : items) {
+            json.writeString(item.name());
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    /**
+     * This method generates a 16 digit Visa card number whose last digit is the one that makes it pass Card's Luhn
+     * check.
+     */
+    private static String generateCardNumber(Random random) {
+        var digits = new StringBuilder("4");
+        while (digits.length() < 15) {
+            digits.append(random.nextInt(10));
+        }
+        for (int check = 0; check < 10; check++) {
+            var number = digits.toString() + check;
+            if (Card.createCard(number, "", "").checkCardNumber()) {
+                return number;
+            }
+        }
+        throw new IllegalStateException("Every card number prefix has a Luhn check digit.");
+    }
+}
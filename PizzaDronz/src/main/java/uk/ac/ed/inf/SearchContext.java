@@ -0,0 +1,102 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the mutable state of a single shortest path query on a Graph: the cost to reach each node, its
+ * heuristic value, its previous node and the open set. The Graph itself is never modified by a query, so any number of
+ * threads can search the same Graph at once as long as each of them uses its own SearchContext.
+ * A context remembers which nodes a query touched, so resetting it for the next query only costs as much as the
+ * previous search did rather than the size of the whole graph.
+ */
+public class SearchContext {
+    // Cost to get to a node from the starting node.
+    private final double[] g;
+    // Estimated cost to get to the end node from a node, NaN if it has not been calculated yet.
+    private final double[] h;
+    // Id of the previous node on the best known path, or -1.
+    private final int[] prev;
+    private final IndexedMinHeap open;
+    // Ids of the nodes whose state differs from the initial state.
+    private final int[] touched;
+    private final boolean[] isTouched;
+    private int touchedCount;
+
+    /**
+     * This constructor creates a context for a graph with the given number of nodes.
+     *
+     * @param size Number of nodes in the graph.
+     */
+    public SearchContext(int size) {
+        g = new double[size];
+        h = new double[size];
+        prev = new int[size];
+        open = new IndexedMinHeap(size);
+        touched = new int[size];
+        isTouched = new boolean[size];
+        Arrays.fill(g, Double.POSITIVE_INFINITY);
+        Arrays.fill(h, Double.NaN);
+        Arrays.fill(prev, -1);
+    }
+
+    public int size() {
+        return g.length;
+    }
+
+    /**
+     * This method restores the initial state of every node touched by the previous query.
+     */
+    public void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            var id = touched[i];
+            g[id] = Double.POSITIVE_INFINITY;
+            h[id] = Double.NaN;
+            prev[id] = -1;
+            isTouched[id] = false;
+        }
+        touchedCount = 0;
+        open.clear();
+    }
+
+    private void touch(int id) {
+        if (!isTouched[id]) {
+            isTouched[id] = true;
+            touched[touchedCount++] = id;
+        }
+    }
+
+    public double getG(int id) {
+        return g[id];
+    }
+
+    public void setG(int id, double cost) {
+        touch(id);
+        g[id] = cost;
+    }
+
+    public boolean hasH(int id) {
+        return !Double.isNaN(h[id]);
+    }
+
+    public double getH(int id) {
+        return h[id];
+    }
+
+    public void setH(int id, double estimate) {
+        touch(id);
+        h[id] = estimate;
+    }
+
+    public int getPrev(int id) {
+        return prev[id];
+    }
+
+    public void setPrev(int id, int prevId) {
+        touch(id);
+        prev[id] = prevId;
+    }
+
+    public IndexedMinHeap getOpen() {
+        return open;
+    }
+}
@@ -1,12 +1,13 @@
 package uk.ac.ed.inf;
 
-import org.json.simple.JSONObject;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
 
 /**
  * This class contains an order, its order outcome, the number of moves it takes for a delivery, and the corresponding
  * restaurant.
  */
-@SuppressWarnings("unchecked")
 public class ValidatedOrder {
     private final Order order;
     private OrderOutcome orderOutcome;
@@ -60,18 +61,19 @@ public class ValidatedOrder {
     }
 
     /**
-     * This method turns the ValidatedOrder object into a JSON string containing the following:
+     * This method writes the ValidatedOrder object as a JSON object containing the following:
      *      orderNo: 8-digit hexadecimal order number.
      *      outcome: An OrderOutcome enum value.
      *      costInPence: Price of the validated order plus 100 pence for delivery.
-     * @return The JSON string of the validated order.
+     * @param generator JSON generator to write the object to.
+     * @throws IOException This exception is thrown when the generator cannot write.
      */
-    public JSONObject toJsonObject() {
-        var delivery = new JSONObject();
-        delivery.put("orderNo", order.orderNo());
-        delivery.put("outcome", orderOutcome.toString());
-        delivery.put("costInPence", order.priceTotalInPence());
-        return delivery;
+    public void writeJson(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("orderNo", order.orderNo());
+        generator.writeStringField("outcome", orderOutcome.toString());
+        generator.writeNumberField("costInPence", order.priceTotalInPence());
+        generator.writeEndObject();
     }
 
     @Override
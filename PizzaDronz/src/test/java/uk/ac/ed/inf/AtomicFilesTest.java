@@ -0,0 +1,44 @@
+package uk.ac.ed.inf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AtomicFilesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fileIsReplacedWithTheRestOfTheBuffer() throws IOException {
+        var path = folder.getRoot().toPath().resolve("file.bin");
+        Files.write(path, new byte[100]);
+        var buffer = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}).position(2);
+        AtomicFiles.writeAtomically(path, buffer);
+        assertArrayEquals(new byte[]{3, 4, 5}, Files.readAllBytes(path));
+        try (var files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(List.of(path), files.toList());
+        }
+    }
+
+    @Test
+    public void failedMoveLeavesNoTemporaryFile() throws IOException {
+        // A non-empty directory cannot be replaced, so moving the file into place fails.
+        var path = folder.newFolder("file.bin").toPath();
+        Files.createFile(path.resolve("occupied"));
+        try {
+            AtomicFiles.writeAtomically(path, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            fail("Expected the file to be rejected.");
+        } catch (IOException e) {
+            try (var files = Files.list(folder.getRoot().toPath())) {
+                assertEquals(List.of(path), files.toList());
+            }
+        }
+    }
+}
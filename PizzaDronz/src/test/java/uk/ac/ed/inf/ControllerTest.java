@@ -0,0 +1,138 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * These tests run a whole day through Controller, against a LocalRestServer serving a generated scenario, so that they
+ * do not need the REST server.
+ */
+public class ControllerTest {
+    private static final String DATE = "2023-04-01";
+    private static final String[] PROPERTIES = {"pizzadronz.offHeapMoveLog", "pizzadronz.binaryFlightpath",
+            "pizzadronz.geojsonDecimals", "pizzadronz.geojsonDropCollinear"};
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        for (var property : PROPERTIES) {
+            System.clearProperty(property);
+        }
+    }
+
+    /**
+     * This method runs the day through a new Controller, which writes its files into the given directory.
+     */
+    private static Controller runDay(ScenarioGenerator scenario, Path directory) throws IOException {
+        var server = LocalRestServer.createLocalRestServer(scenario, 0);
+        try {
+            var controller = new Controller(directory);
+            controller.startApp(new String[]{DATE, server.getBaseURL(), "0"});
+            return controller;
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static int countCoordinates(JsonNode geoJson) {
+        var count = 0;
+        for (var feature : geoJson.get("features")) {
+            count += feature.get("geometry").get("coordinates").size();
+        }
+        return count;
+    }
+
+    @Test(timeout = 120000)
+    public void largeDayOnlyPlansWhatTheBatteryReaches() throws IOException {
+        // The size of day which used to plan every restaurant up front and run out of memory.
+        var scenario = ScenarioGenerator.createScenarioGenerator(42, 500, 100, 10000);
+        var controller = runDay(scenario, folder.getRoot().toPath());
+        assertTrue(controller.getDeliveredOrders() > 0);
+
+        var moves = mapper.readTree(folder.getRoot().toPath().resolve("flightpath-" + DATE + ".json").toFile());
+        assertTrue(moves.size() <= 2000);
+        var deliveries = mapper.readTree(folder.getRoot().toPath().resolve("deliveries-" + DATE + ".json").toFile());
+        assertEquals(10000, deliveries.size());
+        var delivered = 0;
+        for (var delivery : deliveries) {
+            if (delivery.get("outcome").asText().equals(OrderOutcome.DELIVERED.toString())) {
+                delivered++;
+            }
+        }
+        assertEquals(controller.getDeliveredOrders(), delivered);
+        assertTrue(Files.exists(folder.getRoot().toPath().resolve("drone-" + DATE + ".geojson")));
+    }
+
+    @Test(timeout = 60000)
+    public void offHeapMoveLogIsSavedToBinaryFlightpath() throws IOException {
+        System.setProperty("pizzadronz.offHeapMoveLog", "true");
+        System.setProperty("pizzadronz.binaryFlightpath", "true");
+        var directory = folder.getRoot().toPath();
+        var controller = runDay(ScenarioGenerator.createScenarioGenerator(7, 20, 10, 200), directory);
+        assertTrue(controller.getDeliveredOrders() > 0);
+
+        var flightpath = FlightpathFile.read(directory.resolve("flightpath-" + DATE + ".bin"));
+        assertNotNull(flightpath);
+        assertEquals(mapper.readTree(directory.resolve("flightpath-" + DATE + ".json").toFile()).size(),
+                flightpath.size());
+        var converted = directory.resolve("converted.json");
+        FlightpathConverter.convert(directory.resolve("flightpath-" + DATE + ".bin"), converted, null);
+        assertArrayEquals(Files.readAllBytes(directory.resolve("flightpath-" + DATE + ".json")),
+                Files.readAllBytes(converted));
+    }
+
+    @Test(timeout = 60000)
+    public void geoJsonIsRoundedAndReducedWhenAskedFor() throws IOException {
+        var scenario = ScenarioGenerator.createScenarioGenerator(7, 20, 10, 200);
+        var full = folder.newFolder("full").toPath();
+        runDay(scenario, full);
+        System.setProperty("pizzadronz.geojsonDecimals", "5");
+        System.setProperty("pizzadronz.geojsonDropCollinear", "true");
+        var reduced = folder.newFolder("reduced").toPath();
+        runDay(scenario, reduced);
+
+        var fullGeoJson = mapper.readTree(full.resolve("drone-" + DATE + ".geojson").toFile());
+        var reducedGeoJson = mapper.readTree(reduced.resolve("drone-" + DATE + ".geojson").toFile());
+        assertEquals(fullGeoJson.get("features").size(), reducedGeoJson.get("features").size());
+        assertTrue(countCoordinates(reducedGeoJson) < countCoordinates(fullGeoJson));
+        for (var feature : reducedGeoJson.get("features")) {
+            for (var position : feature.get("geometry").get("coordinates")) {
+                for (var coordinate : position) {
+                    var value = coordinate.asDouble();
+                    assertEquals(Math.round(value * 1e5) / 1e5, value, 0.0);
+                }
+            }
+        }
+        assertFalse(Files.exists(reduced.resolve("flightpath-" + DATE + ".bin")));
+    }
+
+    @Test(timeout = 60000)
+    public void savedLegCacheDoesNotDependOnThreadTiming() throws IOException {
+        var scenario = ScenarioGenerator.createScenarioGenerator(7, 20, 10, 200);
+        var first = folder.newFolder("first").toPath();
+        var second = folder.newFolder("second").toPath();
+        runDay(scenario, first);
+        runDay(scenario, second);
+
+        // Every flight path that was started has finished, and added its legs, before the cache is saved.
+        var firstCache = LegCache.read(first.resolve("leg-cache.bin"), 4096);
+        var secondCache = LegCache.read(second.resolve("leg-cache.bin"), 4096);
+        assertNotNull(firstCache);
+        assertNotNull(secondCache);
+        assertTrue(firstCache.size() > 0);
+        assertEquals(firstCache.size(), secondCache.size());
+    }
+}
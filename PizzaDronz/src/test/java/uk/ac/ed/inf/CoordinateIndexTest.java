@@ -0,0 +1,50 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CoordinateIndexTest {
+
+    @Test
+    public void missingCoordinateReturnsMinusOne() {
+        var index = new CoordinateIndex();
+        assertEquals(-1, index.get(LngLat.createAppletonLngLat()));
+    }
+
+    @Test
+    public void equalCoordinatesShareAnId() {
+        var index = new CoordinateIndex();
+        index.put(new LngLat(-3.186874, 55.944494), 4);
+        assertEquals(4, index.get(LngLat.createAppletonLngLat()));
+    }
+
+    @Test
+    public void putReplacesExistingId() {
+        var index = new CoordinateIndex();
+        index.put(LngLat.createAppletonLngLat(), 1);
+        index.put(LngLat.createAppletonLngLat(), 2);
+        assertEquals(2, index.get(LngLat.createAppletonLngLat()));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void signedZerosAreDifferentKeysLikeLngLatEquals() {
+        var index = new CoordinateIndex();
+        index.put(new LngLat(0.0, 0.0), 0);
+        assertNotEquals(new LngLat(-0.0, 0.0), new LngLat(0.0, 0.0));
+        assertEquals(-1, index.get(new LngLat(-0.0, 0.0)));
+    }
+
+    @Test
+    public void indexGrowsPastInitialCapacity() {
+        var index = new CoordinateIndex(2);
+        for (int i = 0; i < 10000; i++) {
+            index.put(new LngLat(-3.19 + i * 1e-7, 55.94 - i * 1e-7), i);
+        }
+        assertEquals(10000, index.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, index.get(new LngLat(-3.19 + i * 1e-7, 55.94 - i * 1e-7)));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.ed.inf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FlightpathFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MoveLog randomLog(int count, long seed) {
+        var random = new Random(seed);
+        var directions = Direction.values();
+        var log = MoveLog.createMoveLog();
+        for (int i = 0; i < count; i++) {
+            var direction = random.nextInt(8) == 0 ? null : directions[random.nextInt(directions.length)];
+            log.append(new Move(new LngLat(-3.19 + random.nextDouble() * 0.01, 55.94 + random.nextDouble() * 0.01),
+                    direction, "ORDER" + random.nextInt(20), random.nextLong()));
+        }
+        return log;
+    }
+
+    @Test
+    public void movesAreReadBackFromTheMappedFile() throws IOException {
+        var log = randomLog(10000, 503);
+        var path = folder.getRoot().toPath().resolve("flightpath.bin");
+        FlightpathFile.write(log, path);
+        var file = FlightpathFile.read(path);
+        assertNotNull(file);
+        assertEquals(log.size(), file.size());
+        assertEquals(log.getOrderNumbers(), file.getOrderNumbers());
+        for (int i = 0; i < log.size(); i++) {
+            assertEquals(log.getLng(i), file.getLng(i), 0.0);
+            assertEquals(log.getLat(i), file.getLat(i), 0.0);
+            assertEquals(log.getDirection(i), file.getDirection(i));
+            assertEquals(log.getOrderNo(i), file.getOrderNo(i));
+            assertEquals(log.getTick(i), file.getTick(i));
+        }
+    }
+
+    @Test
+    public void convertedFileMatchesTheJsonWriter() throws IOException {
+        var log = randomLog(2000, 509);
+        var bin = folder.getRoot().toPath().resolve("flightpath.bin");
+        var json = folder.getRoot().toPath().resolve("flightpath.json");
+        var geoJson = folder.getRoot().toPath().resolve("drone.geojson");
+        FlightpathFile.write(log, bin);
+        assertEquals(log.size(), FlightpathConverter.convert(bin, json, geoJson));
+
+        var expectedJson = new ByteArrayOutputStream();
+        JsonWriter.writeFlightpath(log, expectedJson);
+        assertArrayEquals(expectedJson.toByteArray(), Files.readAllBytes(json));
+        var expectedGeoJson = new ByteArrayOutputStream();
+        JsonWriter.writeGeoJson(log, expectedGeoJson);
+        assertArrayEquals(expectedGeoJson.toByteArray(), Files.readAllBytes(geoJson));
+        assertTrue(Files.size(bin) * 5 < Files.size(json));
+    }
+
+    @Test
+    public void emptyLogIsWrittenAndRead() throws IOException {
+        var path = folder.getRoot().toPath().resolve("flightpath.bin");
+        FlightpathFile.write(MoveLog.createMoveLog(), path);
+        var file = FlightpathFile.read(path);
+        assertNotNull(file);
+        assertEquals(0, file.size());
+        assertTrue(file.getOrderNumbers().isEmpty());
+    }
+
+    @Test
+    public void damagedFilesAreRejected() throws IOException {
+        var path = folder.getRoot().toPath().resolve("flightpath.bin");
+        assertNull(FlightpathFile.read(path));
+        FlightpathFile.write(randomLog(100, 521), path);
+        var bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 3));
+        assertNull(FlightpathFile.read(path));
+
+        // Point the first move at an order number which is not in the table.
+        bytes[16 + Double.BYTES * 2 + 1] = 100;
+        Files.write(path, bytes);
+        assertNull(FlightpathFile.read(path));
+        assertEquals(-1, FlightpathConverter.convert(path, folder.getRoot().toPath().resolve("out.json"), null));
+    }
+}
@@ -0,0 +1,387 @@
+package uk.ac.ed.inf;
+
+import org.jgrapht.alg.shortestpath.AStarShortestPath;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleDirectedWeightedGraph;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * These tests build and search Graph on synthetic maps, so that they do not need the REST server, and compare it
+ * against a straightforward sequential build and the A-Star implementation of JGraphT on the same visibility graph.
+ */
+public class GraphSearchTest {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+
+    private static double pathCost(List<LngLat> path) {
+        double cost = 0;
+        for (int i = 1; i < path.size(); i++) {
+            cost += path.get(i - 1).distanceTo(path.get(i));
+        }
+        return cost;
+    }
+
+    private static SimpleDirectedWeightedGraph<LngLat, DefaultWeightedEdge> toJGraphT(Graph graph) {
+        var jGraph = new SimpleDirectedWeightedGraph<LngLat, DefaultWeightedEdge>(DefaultWeightedEdge.class);
+        graph.getNodeToEdges().keySet().forEach(n -> jGraph.addVertex(n.getCoord()));
+        for (var edges : graph.getNodeToEdges().values()) {
+            for (var e : edges) {
+                var edge = jGraph.addEdge(e.startNode().getCoord(), e.endNode().getCoord());
+                jGraph.setEdgeWeight(edge, e.weight());
+            }
+        }
+        return jGraph;
+    }
+
+    /**
+     * This method builds the directed edges of the visibility graph one by one on a single thread, testing every
+     * directed edge against every no-fly zone. An edge along a side of a no-fly zone is never hidden by it.
+     */
+    private static Map<LngLat, List<LngLat>> sequentialVisibilityGraph(List<LngLat> nodes, List<Polygon> noFlyZones) {
+        Map<LngLat, List<LngLat>> visibilityGraph = new LinkedHashMap<>();
+        for (var u : nodes) {
+            List<LngLat> visible = new ArrayList<>();
+            for (var v : nodes) {
+                if (u.equals(v)) {
+                    continue;
+                }
+                var isVisible = true;
+                for (var nfz : noFlyZones) {
+                    if (nfz.isLineIntersectingNfz(u, v) ||
+                            !nfz.isSide(u, v) && (nfz.isInsidePolygon(LngLat.createLngLatInBetween(u, v, 0.25), true) ||
+                                    nfz.isInsidePolygon(LngLat.createLngLatInBetween(u, v, 0.5), true) ||
+                                    nfz.isInsidePolygon(LngLat.createLngLatInBetween(u, v, 0.75), true))) {
+                        isVisible = false;
+                        break;
+                    }
+                }
+                if (isVisible) {
+                    visible.add(v);
+                }
+            }
+            visibilityGraph.put(u, visible);
+        }
+        return visibilityGraph;
+    }
+
+    /**
+     * This method turns the edges of a graph into a map from the coordinates of each node to the coordinates of the
+     * nodes it can see, in the order of its edges.
+     */
+    static Map<LngLat, List<LngLat>> toCoordinateMap(Graph graph) {
+        Map<LngLat, List<LngLat>> map = new LinkedHashMap<>();
+        graph.getNodeToEdges().forEach((node, edges) ->
+                map.put(node.getCoord(), edges.stream().map(e -> e.endNode().getCoord()).toList()));
+        return map;
+    }
+
+    @Test
+    public void parallelBuildMatchesSequentialBuild() {
+        var gridSize = 5;
+        var noFlyZones = ScenarioGenerator.generateNoFlyZones(gridSize, 6, 29);
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 15, 31);
+        var graph = Graph.createGraph(APPLETON, noFlyZones, restaurants);
+
+        var actual = toCoordinateMap(graph);
+        var expected = sequentialVisibilityGraph(List.copyOf(actual.keySet()), noFlyZones);
+        assertEquals(expected, actual);
+        for (var edges : graph.getNodeToEdges().values()) {
+            for (var e : edges) {
+                assertEquals(e.startNode().getCoord().distanceTo(e.endNode().getCoord()), e.weight());
+            }
+        }
+    }
+
+    @Test
+    public void edgeViewMatchesCompactAdjacency() {
+        var gridSize = 4;
+        var graph = Graph.createGraph(APPLETON, ScenarioGenerator.generateNoFlyZones(gridSize, 5, 59), ScenarioGenerator.generateRestaurants(gridSize, 8, 61));
+        var nodeToEdges = graph.getNodeToEdges();
+        assertSame(nodeToEdges, graph.getNodeToEdges());
+        assertEquals(graph.getNodeCount(), nodeToEdges.size());
+        assertEquals(graph.getEdgeCount(), nodeToEdges.values().stream().mapToInt(List::size).sum());
+        var expectedId = 0;
+        for (var entry : nodeToEdges.entrySet()) {
+            assertEquals(expectedId++, entry.getKey().getId());
+            var previous = -1;
+            for (var e : entry.getValue()) {
+                assertSame(entry.getKey(), e.startNode());
+                assertTrue(e.endNode().getId() > previous);
+                previous = e.endNode().getId();
+                assertTrue(nodeToEdges.get(e.endNode()).stream().anyMatch(back -> back.endNode() == e.startNode()));
+            }
+        }
+    }
+
+    @Test
+    public void addingNoFlyZoneMatchesFullRebuild() {
+        var gridSize = 6;
+        var noFlyZones = ScenarioGenerator.generateNoFlyZones(gridSize, 6, 67);
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 15, 71);
+        var graph = Graph.createGraph(APPLETON, noFlyZones.subList(1, noFlyZones.size()), restaurants);
+        var updated = graph.withNoFlyZone(noFlyZones.get(0));
+        var rebuilt = Graph.createGraph(APPLETON, concat(noFlyZones.subList(1, noFlyZones.size()), noFlyZones.get(0)),
+                restaurants);
+        assertEquals(toCoordinateMap(rebuilt), toCoordinateMap(updated));
+        assertTrue(updated.getVisibilityTests() < rebuilt.getVisibilityTests() / 4);
+        for (var r : restaurants) {
+            assertEquals(rebuilt.getPath(APPLETON, r), updated.getPath(APPLETON, r));
+        }
+    }
+
+    @Test
+    public void removingNoFlyZoneMatchesFullRebuild() {
+        var gridSize = 6;
+        var noFlyZones = ScenarioGenerator.generateNoFlyZones(gridSize, 6, 73);
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 15, 79);
+        var graph = Graph.createGraph(APPLETON, noFlyZones, restaurants);
+        var removed = noFlyZones.get(noFlyZones.size() / 2);
+        var updated = graph.withoutNoFlyZone(removed);
+        List<Polygon> remaining = new ArrayList<>(noFlyZones);
+        remaining.remove(removed);
+        var rebuilt = Graph.createGraph(APPLETON, remaining, restaurants);
+        assertEquals(toCoordinateMap(rebuilt), toCoordinateMap(updated));
+        assertTrue(updated.getVisibilityTests() < rebuilt.getVisibilityTests() / 4);
+        assertSame(updated, updated.withoutNoFlyZone(removed));
+    }
+
+    @Test
+    public void addingAndRemovingRestaurantsMatchesFullRebuild() {
+        var gridSize = 5;
+        var noFlyZones = ScenarioGenerator.generateNoFlyZones(gridSize, 5, 83);
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 10, 89);
+        var graph = Graph.createGraph(APPLETON, noFlyZones, restaurants.subList(0, 9));
+        var added = graph.withRestaurant(restaurants.get(9));
+        assertEquals(toCoordinateMap(Graph.createGraph(APPLETON, noFlyZones, restaurants)), toCoordinateMap(added));
+        assertTrue(added.getVisibilityTests() < added.getNodeToEdges().size());
+
+        var removed = added.withoutRestaurant(restaurants.get(0));
+        assertEquals(toCoordinateMap(Graph.createGraph(APPLETON, noFlyZones, restaurants.subList(1, 10))),
+                toCoordinateMap(removed));
+        assertEquals(0, removed.getVisibilityTests());
+    }
+
+    @Test
+    public void updatesDoNotChangeOriginalGraph() {
+        var gridSize = 4;
+        var noFlyZones = ScenarioGenerator.generateNoFlyZones(gridSize, 5, 97);
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 5, 101);
+        var graph = Graph.createGraph(APPLETON, noFlyZones, restaurants);
+        var before = toCoordinateMap(graph);
+        graph.withoutNoFlyZone(noFlyZones.get(0));
+        graph.withRestaurant(new LngLat(-3.19, 55.94));
+        assertEquals(before, toCoordinateMap(graph));
+    }
+
+    @Test
+    public void fullGraphTravelsAlongSides() {
+        var noFlyZones = ScenarioGenerator.generateNoFlyZones(6, 9, 103);
+        var index = NoFlyZoneIndex.createNoFlyZoneIndex(noFlyZones);
+        var graph = Graph.createGraph(APPLETON, index, ScenarioGenerator.generateRestaurants(6, 5, 107));
+        var edges = toCoordinateMap(graph);
+        for (var nfz : noFlyZones) {
+            var coordinates = nfz.coordinates();
+            var n = coordinates.size();
+            for (int i = 0; i < n; i++) {
+                var u = coordinates.get(i);
+                var v = coordinates.get((i + 1) % n);
+                assertTrue(nfz.isSide(u, v));
+                assertTrue(nfz.isSide(v, u));
+                assertFalse(nfz.isSide(u, coordinates.get((i + 2) % n)));
+                // The side is an edge, so the path along it is the side itself rather than a detour.
+                assertTrue(edges.get(u).contains(v));
+                assertEquals(u.distanceTo(v), pathCost(graph.getPath(u, v)), 1e-15);
+            }
+        }
+    }
+
+    @Test
+    public void reducedGraphKeepsPathCosts() {
+        var gridSize = 6;
+        var noFlyZones = NoFlyZoneIndex.createNoFlyZoneIndex(ScenarioGenerator.generateNoFlyZones(gridSize, 9, 103));
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 20, 107);
+        var full = Graph.createGraph(APPLETON, noFlyZones, restaurants);
+        var reduced = Graph.createReducedGraph(APPLETON, noFlyZones, restaurants);
+        System.out.println("Reduced visibility graph: " + reduced.describeSizeComparedTo(full) + ".");
+        assertEquals(Graph.Mode.REDUCED, reduced.getMode());
+        assertTrue(reduced.getNodeCount() < full.getNodeCount());
+        assertTrue(reduced.getEdgeCount() < full.getEdgeCount() / 2);
+        for (var r : restaurants) {
+            assertEquals(pathCost(full.getPath(APPLETON, r)), pathCost(reduced.getPath(APPLETON, r)), 1e-12);
+            for (var s : restaurants.subList(0, 5)) {
+                assertEquals(pathCost(full.getPath(s, r)), pathCost(reduced.getPath(s, r)), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void reducedGraphDropsReflexVertices() {
+        // An L-shaped no-fly zone, whose inner corner is its only reflex vertex.
+        var x = APPLETON.lng() + 0.001;
+        var y = APPLETON.lat();
+        var inner = new LngLat(x + 0.001, y + 0.001);
+        var nfz = Polygon.fromLngLat(List.of(new LngLat(x, y), new LngLat(x + 0.002, y), new LngLat(x + 0.002, y + 0.001),
+                inner, new LngLat(x + 0.001, y + 0.002), new LngLat(x, y + 0.002)));
+        var restaurant = new LngLat(x + 0.003, y + 0.003);
+        var full = Graph.createGraph(APPLETON, List.of(nfz), List.of(restaurant));
+        var reduced = Graph.createReducedGraph(APPLETON, NoFlyZoneIndex.createNoFlyZoneIndex(List.of(nfz)),
+                List.of(restaurant));
+        assertTrue(toCoordinateMap(full).containsKey(inner));
+        assertFalse(toCoordinateMap(reduced).containsKey(inner));
+        assertEquals(full.getNodeCount() - 1, reduced.getNodeCount());
+        assertEquals(pathCost(full.getPath(APPLETON, restaurant)), pathCost(reduced.getPath(APPLETON, restaurant)),
+                1e-12);
+    }
+
+    @Test
+    public void reducedGraphUpdatesMatchFullRebuild() {
+        var gridSize = 5;
+        var noFlyZones = ScenarioGenerator.generateNoFlyZones(gridSize, 8, 109);
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 10, 113);
+        var rest = noFlyZones.subList(1, noFlyZones.size());
+        var graph = Graph.createReducedGraph(APPLETON, NoFlyZoneIndex.createNoFlyZoneIndex(rest),
+                restaurants.subList(0, 9));
+
+        var added = graph.withNoFlyZone(noFlyZones.get(0)).withRestaurant(restaurants.get(9));
+        var rebuilt = Graph.createReducedGraph(APPLETON,
+                NoFlyZoneIndex.createNoFlyZoneIndex(concat(rest, noFlyZones.get(0))), restaurants);
+        assertEquals(Graph.Mode.REDUCED, added.getMode());
+        assertEquals(toCoordinateMap(rebuilt), toCoordinateMap(added));
+
+        var removed = added.withoutNoFlyZone(noFlyZones.get(0));
+        assertEquals(toCoordinateMap(Graph.createReducedGraph(APPLETON, NoFlyZoneIndex.createNoFlyZoneIndex(rest),
+                restaurants)), toCoordinateMap(removed));
+    }
+
+    private static List<Polygon> concat(List<Polygon> noFlyZones, Polygon nfz) {
+        List<Polygon> all = new ArrayList<>(noFlyZones);
+        all.add(nfz);
+        return all;
+    }
+
+    @Test
+    public void pathToItselfIsEmpty() {
+        var graph = Graph.createGraph(APPLETON, ScenarioGenerator.generateNoFlyZones(2, 4, 1), List.of(new LngLat(-3.19, 55.94)));
+        assertEquals(List.of(), graph.getPath(APPLETON, APPLETON));
+    }
+
+    @Test
+    public void pathWithoutNoFlyZonesIsStraight() {
+        var restaurant = new LngLat(-3.19, 55.94);
+        var graph = Graph.createGraph(APPLETON, List.of(), List.of(restaurant));
+        assertEquals(List.of(APPLETON, restaurant), graph.getPath(APPLETON, restaurant));
+    }
+
+    @Test
+    public void unknownCoordinatesHaveNoPath() {
+        var graph = Graph.createGraph(APPLETON, List.of(), List.of(new LngLat(-3.19, 55.94)));
+        assertNull(graph.getPath(APPLETON, new LngLat(0.0, 0.0)));
+    }
+
+    @Test
+    public void pathsMatchJGraphTOnSyntheticMap() {
+        var gridSize = 6;
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 20, 7);
+        var graph = Graph.createGraph(APPLETON, ScenarioGenerator.generateNoFlyZones(gridSize, 6, 3), restaurants);
+        var astar = new AStarShortestPath<>(toJGraphT(graph), new GraphTest.Heuristic());
+        for (var r : restaurants) {
+            var ownPath = graph.getPath(APPLETON, r);
+            var generatedPath = astar.getPath(APPLETON, r);
+            assertNotNull(ownPath);
+            assertNotNull(generatedPath);
+            assertEquals(generatedPath.getWeight(), pathCost(ownPath), 1e-12);
+            assertEquals(APPLETON, ownPath.get(0));
+            assertEquals(r, ownPath.get(ownPath.size() - 1));
+        }
+    }
+
+    @Test
+    public void oneSearchFindsPathsToAllRestaurants() {
+        var gridSize = 6;
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 25, 137);
+        var graph = Graph.createGraph(APPLETON, ScenarioGenerator.generateNoFlyZones(gridSize, 6, 139), restaurants);
+        var paths = graph.getPaths(APPLETON, restaurants);
+        assertEquals(List.copyOf(new LinkedHashSet<>(restaurants)), List.copyOf(paths.keySet()));
+        for (var r : restaurants) {
+            var path = paths.get(r);
+            assertEquals(APPLETON, path.get(0));
+            assertEquals(r, path.get(path.size() - 1));
+            assertEquals(pathCost(graph.getPath(APPLETON, r)), pathCost(path), 1e-12);
+        }
+    }
+
+    @Test
+    public void oneSearchHandlesStartAndUnknownDestinations() {
+        var restaurant = new LngLat(-3.19, 55.94);
+        var unknown = new LngLat(0.0, 0.0);
+        var graph = Graph.createGraph(APPLETON, List.of(), List.of(restaurant));
+        var paths = graph.getPaths(APPLETON, List.of(restaurant, APPLETON, unknown));
+        assertEquals(List.of(APPLETON, restaurant), paths.get(restaurant));
+        assertEquals(List.of(), paths.get(APPLETON));
+        assertTrue(paths.containsKey(unknown));
+        assertNull(paths.get(unknown));
+    }
+
+    @Test
+    public void concurrentQueriesMatchSequentialQueries() {
+        var gridSize = 6;
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 30, 13);
+        var graph = Graph.createGraph(APPLETON, ScenarioGenerator.generateNoFlyZones(gridSize, 5, 17), restaurants);
+        var expected = restaurants.stream().map(r -> graph.getPath(APPLETON, r)).toList();
+        for (int i = 0; i < 20; i++) {
+            var actual = restaurants.parallelStream().map(r -> graph.getPath(APPLETON, r)).toList();
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void searchContextCanBeReused() {
+        var gridSize = 4;
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 10, 19);
+        var graph = Graph.createGraph(APPLETON, ScenarioGenerator.generateNoFlyZones(gridSize, 5, 23), restaurants);
+        var context = graph.newSearchContext();
+        for (var r : restaurants) {
+            assertEquals(graph.getPath(APPLETON, r), graph.getPath(APPLETON, r, context));
+            assertEquals(graph.getPath(r, APPLETON), graph.getPath(r, APPLETON, context));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void graphCannotBeModified() {
+        var graph = Graph.createGraph(APPLETON, List.of(), List.of(new LngLat(-3.19, 55.94)));
+        graph.getNodeToEdges().values().iterator().next().clear();
+    }
+
+    @Test
+    public void measureSearchTimeOnLargeSyntheticMap() {
+        var gridSize = 8;
+        var restaurants = ScenarioGenerator.generateRestaurants(gridSize, 50, 11);
+        var start = System.currentTimeMillis();
+        var graph = Graph.createGraph(APPLETON, ScenarioGenerator.generateNoFlyZones(gridSize, 6, 5), restaurants);
+        var end = System.currentTimeMillis();
+        System.out.println("Graph generation with " + graph.getNodeToEdges().size() + " nodes took " + (end - start) +
+                "ms.");
+        var astar = new AStarShortestPath<>(toJGraphT(graph), new GraphTest.Heuristic());
+
+        var ownStart = System.nanoTime();
+        for (var r : restaurants) {
+            assertNotNull(graph.getPath(APPLETON, r));
+        }
+        var ownEnd = System.nanoTime();
+        for (var r : restaurants) {
+            assertNotNull(astar.getPath(APPLETON, r));
+        }
+        var generatedEnd = System.nanoTime();
+        System.out.println("Custom A-Star: " + (ownEnd - ownStart) / 1000000.0 / restaurants.size() + "ms per query.");
+        System.out.println("JGraphT A-Star: " + (generatedEnd - ownEnd) / 1000000.0 / restaurants.size() +
+                "ms per query.");
+        var sweepStart = System.nanoTime();
+        assertEquals(restaurants.size(), graph.getPaths(APPLETON, restaurants).values().stream()
+                .filter(Objects::nonNull).count());
+        System.out.println("One Dijkstra sweep to all " + restaurants.size() + " restaurants: " +
+                (System.nanoTime() - sweepStart) / 1000000.0 + "ms.");
+    }
+}
@@ -0,0 +1,119 @@
+package uk.ac.ed.inf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GraphSnapshotTest {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+    private static final List<Polygon> NO_FLY_ZONES = ScenarioGenerator.generateNoFlyZones(5, 6, 127);
+    private static final NoFlyZoneIndex INDEX = NoFlyZoneIndex.createNoFlyZoneIndex(NO_FLY_ZONES);
+    private static final List<LngLat> RESTAURANTS = ScenarioGenerator.generateRestaurants(5, 12, 131);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshotRoundTripsGraph() throws IOException {
+        var path = folder.getRoot().toPath().resolve("graph.bin");
+        var graph = Graph.createGraph(APPLETON, INDEX, RESTAURANTS);
+        GraphSnapshot.write(graph, path);
+        var loaded = GraphSnapshot.read(path, APPLETON, INDEX, RESTAURANTS, Graph.Mode.FULL);
+        assertNotNull(loaded);
+        assertEquals(0, loaded.getVisibilityTests());
+        assertEquals(GraphSearchTest.toCoordinateMap(graph), GraphSearchTest.toCoordinateMap(loaded));
+        for (var r : RESTAURANTS) {
+            assertEquals(graph.getPath(APPLETON, r), loaded.getPath(APPLETON, r));
+        }
+    }
+
+    @Test
+    public void reducedSnapshotIsNotUsedForFullGraph() throws IOException {
+        var path = folder.getRoot().toPath().resolve("graph.bin");
+        var reduced = Graph.createReducedGraph(APPLETON, INDEX, RESTAURANTS);
+        GraphSnapshot.write(reduced, path);
+        assertNull(GraphSnapshot.read(path, APPLETON, INDEX, RESTAURANTS, Graph.Mode.FULL));
+        var loaded = GraphSnapshot.read(path, APPLETON, INDEX, RESTAURANTS, Graph.Mode.REDUCED);
+        assertNotNull(loaded);
+        assertEquals(GraphSearchTest.toCoordinateMap(reduced), GraphSearchTest.toCoordinateMap(loaded));
+    }
+
+    @Test
+    public void changedDataDoesNotMatchSnapshot() throws IOException {
+        var path = folder.getRoot().toPath().resolve("graph.bin");
+        GraphSnapshot.write(Graph.createGraph(APPLETON, INDEX, RESTAURANTS), path);
+        var fewerRestaurants = RESTAURANTS.subList(1, RESTAURANTS.size());
+        assertNull(GraphSnapshot.read(path, APPLETON, INDEX, fewerRestaurants, Graph.Mode.FULL));
+        var fewerZones = NoFlyZoneIndex.createNoFlyZoneIndex(NO_FLY_ZONES.subList(1, NO_FLY_ZONES.size()));
+        assertNull(GraphSnapshot.read(path, APPLETON, fewerZones, RESTAURANTS, Graph.Mode.FULL));
+    }
+
+    @Test
+    public void loadOrBuildOnlyBuildsOnce() {
+        var path = folder.getRoot().toPath().resolve("graph.bin");
+        var built = GraphSnapshot.loadOrBuild(path, APPLETON, INDEX, RESTAURANTS);
+        assertTrue(built.getVisibilityTests() > 0);
+        assertTrue(Files.exists(path));
+        var loaded = GraphSnapshot.loadOrBuild(path, APPLETON, INDEX, RESTAURANTS);
+        assertEquals(0, loaded.getVisibilityTests());
+        assertEquals(GraphSearchTest.toCoordinateMap(built), GraphSearchTest.toCoordinateMap(loaded));
+    }
+
+    @Test
+    public void damagedSnapshotIsRebuilt() throws IOException {
+        var path = folder.getRoot().toPath().resolve("graph.bin");
+        GraphSnapshot.write(Graph.createGraph(APPLETON, INDEX, RESTAURANTS), path);
+        var bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+        assertNull(GraphSnapshot.read(path, APPLETON, INDEX, RESTAURANTS, Graph.Mode.FULL));
+        var rebuilt = GraphSnapshot.loadOrBuild(path, APPLETON, INDEX, RESTAURANTS);
+        assertTrue(rebuilt.getVisibilityTests() > 0);
+        assertEquals(bytes.length, Files.size(path));
+    }
+
+    @Test
+    public void snapshotOfOtherDataIsReplaced() throws IOException {
+        var path = folder.getRoot().toPath().resolve("graph.bin");
+        var fewerRestaurants = RESTAURANTS.subList(1, RESTAURANTS.size());
+        GraphSnapshot.write(Graph.createGraph(APPLETON, INDEX, fewerRestaurants), path);
+        var rebuilt = GraphSnapshot.loadOrBuild(path, APPLETON, INDEX, RESTAURANTS);
+        assertTrue(rebuilt.getVisibilityTests() > 0);
+        assertNotNull(GraphSnapshot.read(path, APPLETON, INDEX, RESTAURANTS, Graph.Mode.FULL));
+        assertNull(GraphSnapshot.read(path, APPLETON, INDEX, fewerRestaurants, Graph.Mode.FULL));
+    }
+
+    @Test
+    public void snapshotFromOlderRulesIsIgnored() throws IOException {
+        var path = folder.getRoot().toPath().resolve("graph.bin");
+        GraphSnapshot.write(Graph.createGraph(APPLETON, INDEX, RESTAURANTS), path);
+        // Replace the stored hash, which follows the magic number and version, with one made under the previous rules.
+        var bytes = Files.readAllBytes(path);
+        var stale = GraphSnapshot.computeHash(APPLETON, NO_FLY_ZONES, RESTAURANTS, Graph.Mode.FULL,
+                Graph.RULES_VERSION - 1);
+        System.arraycopy(stale, 0, bytes, Integer.BYTES * 2, stale.length);
+        Files.write(path, bytes);
+        assertNull(GraphSnapshot.read(path, APPLETON, INDEX, RESTAURANTS, Graph.Mode.FULL));
+    }
+
+    @Test
+    public void failedWriteLeavesNoTemporaryFile() throws IOException {
+        // A non-empty directory cannot be replaced, so moving the snapshot into place fails.
+        var path = folder.newFolder("graph.bin").toPath();
+        Files.createFile(path.resolve("occupied"));
+        try {
+            GraphSnapshot.write(Graph.createGraph(APPLETON, INDEX, RESTAURANTS), path);
+            fail("Expected the snapshot to be rejected.");
+        } catch (IOException e) {
+            try (var files = Files.list(folder.getRoot().toPath())) {
+                assertEquals(List.of(path), files.toList());
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonWriterTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void flightpathIsStreamedMoveByMove() throws IOException {
+        var start = LngLat.createAppletonLngLat();
+        var log = MoveLog.createMoveLog();
+        log.append(new Move(start, Direction.E, "AAAA0001", 5));
+        log.append(new Move(start.nextPosition(Direction.E), null, "AAAA0001", 6));
+        log.append(new Move(start.nextPosition(Direction.E), Direction.W, "AAAA0001", 7));
+        log.append(new Move(start, null, "AAAA0001", 8));
+
+        var out = new ByteArrayOutputStream();
+        JsonWriter.writeFlightpath(log, out);
+        var moves = MAPPER.readTree(out.toByteArray());
+        assertEquals(4, moves.size());
+        for (int i = 0; i < moves.size(); i++) {
+            var move = moves.get(i);
+            var next = Math.min(i + 1, moves.size() - 1);
+            assertEquals("AAAA0001", move.get("orderNo").asText());
+            assertEquals(log.getLng(i), move.get("fromLongitude").asDouble(), 0.0);
+            assertEquals(log.getLat(i), move.get("fromLatitude").asDouble(), 0.0);
+            assertEquals(log.getLng(next), move.get("toLongitude").asDouble(), 0.0);
+            assertEquals(log.getLat(next), move.get("toLatitude").asDouble(), 0.0);
+            assertEquals(log.getTick(i), move.get("ticksSinceStartOfCalculation").asLong());
+        }
+        assertEquals(Direction.E.getAngle(), moves.get(0).get("angle").asDouble(), 0.0);
+        assertTrue(moves.get(1).get("angle").isNull());
+    }
+
+    @Test
+    public void deliveriesAreStreamedOrderByOrder() throws IOException {
+        var order = ValidatedOrder.createValidatedOrder(new Order("55724045",
+                Card.createCard("4649386874496963", "05/27", "011"), 1100, new String[]{}));
+        order.setOrderOutcome(OrderOutcome.DELIVERED);
+
+        var out = new ByteArrayOutputStream();
+        JsonWriter.writeDeliveries(List.of(order, order), out);
+        var deliveries = MAPPER.readTree(out.toByteArray());
+        assertEquals(2, deliveries.size());
+        assertEquals("55724045", deliveries.get(0).get("orderNo").asText());
+        assertEquals("DELIVERED", deliveries.get(0).get("outcome").asText());
+        assertEquals(1100, deliveries.get(1).get("costInPence").asInt());
+    }
+
+    @Test
+    public void emptyLogGivesAnEmptyArray() throws IOException {
+        var out = new ByteArrayOutputStream();
+        JsonWriter.writeFlightpath(MoveLog.createMoveLog(), out);
+        assertEquals("[]", out.toString());
+    }
+
+    private static MoveLog twoOrderLog() {
+        var start = LngLat.createAppletonLngLat();
+        var log = MoveLog.createMoveLog();
+        var position = start;
+        for (var direction : List.of(Direction.E, Direction.E, Direction.E, Direction.N, Direction.N)) {
+            log.append(new Move(position, direction, "AAAA0001", 1));
+            position = position.nextPosition(direction);
+        }
+        log.append(new Move(position, null, "AAAA0001", 2));
+        log.append(new Move(position, Direction.W, "AAAA0002", 3));
+        log.append(new Move(position.nextPosition(Direction.W), null, "AAAA0002", 4));
+        return log;
+    }
+
+    @Test
+    public void geoJsonHasOneFeaturePerOrder() throws IOException {
+        var log = twoOrderLog();
+        var out = new ByteArrayOutputStream();
+        JsonWriter.writeGeoJson(log, out);
+        var geoJson = MAPPER.readTree(out.toByteArray());
+        assertEquals("FeatureCollection", geoJson.get("type").asText());
+        var features = geoJson.get("features");
+        assertEquals(2, features.size());
+        assertEquals("AAAA0001", features.get(0).get("properties").get("orderNo").asText());
+        assertEquals("AAAA0002", features.get(1).get("properties").get("orderNo").asText());
+        var coordinates = features.get(0).get("geometry").get("coordinates");
+        assertEquals("LineString", features.get(0).get("geometry").get("type").asText());
+        assertEquals(6, coordinates.size());
+        for (int i = 0; i < coordinates.size(); i++) {
+            assertEquals(log.getLng(i), coordinates.get(i).get(0).asDouble(), 0.0);
+            assertEquals(log.getLat(i), coordinates.get(i).get(1).asDouble(), 0.0);
+        }
+        assertEquals(2, features.get(1).get("geometry").get("coordinates").size());
+    }
+
+    @Test
+    public void collinearPointsAreDropped() throws IOException {
+        var log = twoOrderLog();
+        var out = new ByteArrayOutputStream();
+        JsonWriter.writeGeoJson(log, out, JsonWriter.FULL_PRECISION, true);
+        var coordinates = MAPPER.readTree(out.toByteArray()).get("features").get(0).get("geometry").get("coordinates");
+        // Only the start, the turn from east to north and the end are left.
+        assertEquals(3, coordinates.size());
+        for (var entry : List.of(new int[]{0, 0}, new int[]{1, 3}, new int[]{2, 5})) {
+            assertEquals(log.getLng(entry[1]), coordinates.get(entry[0]).get(0).asDouble(), 0.0);
+            assertEquals(log.getLat(entry[1]), coordinates.get(entry[0]).get(1).asDouble(), 0.0);
+        }
+    }
+
+    @Test
+    public void coordinatesAreRounded() throws IOException {
+        var log = MoveLog.createMoveLog();
+        log.append(new Move(new LngLat(-3.1868691, 55.9445379), Direction.E, "AAAA0001", 0));
+        log.append(new Move(new LngLat(-3.1867191, 55.9445379), Direction.E, "AAAA0001", 0));
+        log.append(new Move(new LngLat(-3.1865691, 55.9445379), null, "AAAA0001", 0));
+        var out = new ByteArrayOutputStream();
+        JsonWriter.writeGeoJson(log, out, 3, false);
+        var coordinates = MAPPER.readTree(out.toByteArray()).get("features").get(0).get("geometry").get("coordinates");
+        // The middle point is the same as the first once rounded, but the last one is always kept.
+        assertEquals(2, coordinates.size());
+        assertEquals("-3.187", coordinates.get(0).get(0).asText());
+        assertEquals("55.945", coordinates.get(1).get(1).asText());
+    }
+
+    @Test
+    public void emptyLogGivesNoFeatures() throws IOException {
+        var out = new ByteArrayOutputStream();
+        JsonWriter.writeGeoJson(MoveLog.createMoveLog(), out);
+        assertEquals(0, MAPPER.readTree(out.toByteArray()).get("features").size());
+    }
+}
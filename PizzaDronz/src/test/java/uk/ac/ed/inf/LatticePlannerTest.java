@@ -0,0 +1,82 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LatticePlannerTest {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+    private static final List<Polygon> NO_FLY_ZONES = ScenarioGenerator.generateNoFlyZones(6, 6, 149);
+    private static final NoFlyZoneIndex INDEX = NoFlyZoneIndex.createNoFlyZoneIndex(NO_FLY_ZONES);
+    private static final List<LngLat> RESTAURANTS = ScenarioGenerator.generateRestaurants(6, 15, 151);
+    private static final Graph GRAPH = Graph.createGraph(APPLETON, INDEX, RESTAURANTS);
+
+    /**
+     * This method replays the plan from the start, checking that no move crosses a no-fly zone.
+     */
+    private static LngLat replay(LngLat start, List<Direction> plan) {
+        var position = start;
+        for (var d : plan) {
+            var next = position.nextPosition(d);
+            assertFalse(INDEX.isLineIntersectingNfz(position, next));
+            position = next;
+        }
+        return position;
+    }
+
+    @Test
+    public void plansEndCloseToRestaurantWithoutCrossingNoFlyZones() {
+        var planner = LatticePlanner.createLatticePlanner(GRAPH);
+        for (var r : RESTAURANTS) {
+            var plan = planner.plan(APPLETON, r);
+            assertNotNull(plan);
+            assertTrue(replay(APPLETON, plan).closeTo(r));
+        }
+        assertTrue(planner.getExpandedStates() > 0);
+    }
+
+    @Test
+    public void plansNeverNeedMoreMovesThanGreedyPathFinder() {
+        var planner = LatticePlanner.createLatticePlanner(GRAPH);
+        var pathFinder = new PathFinder();
+        for (var r : RESTAURANTS) {
+            var greedy = pathFinder.travel(APPLETON, GRAPH.getPath(APPLETON, r), "1", INDEX);
+            var lattice = pathFinder.travel(APPLETON, r, "1", planner);
+            assertTrue(lattice.size() <= greedy.size());
+        }
+    }
+
+    @Test
+    public void planWithoutNoFlyZonesHasFewestPossibleMoves() {
+        var restaurant = new LngLat(APPLETON.lng() + 0.0015, APPLETON.lat());
+        var graph = Graph.createGraph(APPLETON, List.of(), List.of(restaurant));
+        var plan = LatticePlanner.createLatticePlanner(graph).plan(APPLETON, restaurant);
+        // Ten moves east would land exactly on the restaurant, but nine already get close to it.
+        assertEquals(9, plan.size());
+        assertTrue(plan.stream().allMatch(d -> d == Direction.E));
+    }
+
+    @Test
+    public void planFromNearbyStartIsEmpty() {
+        var restaurant = RESTAURANTS.get(0);
+        var start = new LngLat(restaurant.lng() + 0.0001, restaurant.lat());
+        assertEquals(List.of(), LatticePlanner.createLatticePlanner(GRAPH).plan(start, restaurant));
+    }
+
+    @Test
+    public void searchGivesUpAtStateLimit() {
+        var planner = LatticePlanner.createLatticePlanner(GRAPH, 10);
+        assertNull(planner.plan(APPLETON, RESTAURANTS.get(0)));
+    }
+
+    @Test
+    public void travelReturnsToStart() {
+        var r = RESTAURANTS.get(1);
+        var moves = new PathFinder().travel(APPLETON, r, "1", LatticePlanner.createLatticePlanner(GRAPH));
+        assertNull(moves.get(moves.size() - 1).direction());
+        assertTrue(moves.get(moves.size() - 1).coordinates().closeTo(APPLETON));
+        assertEquals(APPLETON, moves.get(0).coordinates());
+    }
+}
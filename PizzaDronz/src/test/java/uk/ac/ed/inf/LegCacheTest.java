@@ -0,0 +1,148 @@
+package uk.ac.ed.inf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LegCacheTest {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+    private static final List<Polygon> NO_FLY_ZONES = ScenarioGenerator.generateNoFlyZones(5, 6, 137);
+    private static final NoFlyZoneIndex INDEX = NoFlyZoneIndex.createNoFlyZoneIndex(NO_FLY_ZONES);
+    private static final List<LngLat> RESTAURANTS = ScenarioGenerator.generateRestaurants(5, 8, 139);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void cachedLegsGiveTheSameMoves() {
+        var graph = Graph.createGraph(APPLETON, INDEX, RESTAURANTS);
+        var cache = LegCache.createLegCache(1000);
+        for (var r : RESTAURANTS) {
+            var path = graph.getPath(APPLETON, r);
+            var planned = new PathFinder(cache).travel(APPLETON, path, "", INDEX);
+            var misses = cache.getMisses();
+            var replayed = new PathFinder(cache).travel(APPLETON, path, "", INDEX);
+            assertEquals(misses, cache.getMisses());
+            assertEquals(planned.size(), replayed.size());
+            for (int i = 0; i < planned.size(); i++) {
+                assertEquals(planned.get(i).coordinates(), replayed.get(i).coordinates());
+                assertEquals(planned.get(i).direction(), replayed.get(i).direction());
+            }
+        }
+        assertTrue(cache.getHits() > 0);
+        assertTrue(cache.getHitRate() >= 0.5);
+    }
+
+    @Test
+    public void legsAreKeyedByPlannerAndNoFlyZones() {
+        var cache = LegCache.createLegCache(10);
+        var end = new LngLat(APPLETON.lng() + 0.001, APPLETON.lat());
+        var directions = List.of(Direction.E, Direction.ENE, Direction.SSW);
+        cache.put(LegCache.Planner.STEERED, INDEX, APPLETON, end, directions);
+        assertEquals(directions, cache.get(LegCache.Planner.STEERED, INDEX, APPLETON, end));
+        assertNull(cache.get(LegCache.Planner.LATTICE, INDEX, APPLETON, end));
+        var otherZones = NoFlyZoneIndex.createNoFlyZoneIndex(NO_FLY_ZONES.subList(1, NO_FLY_ZONES.size()));
+        assertNull(cache.get(LegCache.Planner.STEERED, otherZones, APPLETON, end));
+        var sameZones = NoFlyZoneIndex.createNoFlyZoneIndex(List.copyOf(NO_FLY_ZONES));
+        assertEquals(directions, cache.get(LegCache.Planner.STEERED, sameZones, APPLETON, end));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void leastRecentlyUsedLegIsEvicted() {
+        var cache = LegCache.createLegCache(2);
+        var ends = List.of(new LngLat(0.0, 1.0), new LngLat(0.0, 2.0), new LngLat(0.0, 3.0));
+        cache.put(LegCache.Planner.STEERED, INDEX, APPLETON, ends.get(0), List.of(Direction.N));
+        cache.put(LegCache.Planner.STEERED, INDEX, APPLETON, ends.get(1), List.of(Direction.S));
+        assertNotNull(cache.get(LegCache.Planner.STEERED, INDEX, APPLETON, ends.get(0)));
+        cache.put(LegCache.Planner.STEERED, INDEX, APPLETON, ends.get(2), List.of(Direction.W));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get(LegCache.Planner.STEERED, INDEX, APPLETON, ends.get(0)));
+        assertNull(cache.get(LegCache.Planner.STEERED, INDEX, APPLETON, ends.get(1)));
+    }
+
+    @Test
+    public void cacheRoundTripsThroughFile() throws IOException {
+        var path = folder.getRoot().toPath().resolve("legs.bin");
+        var cache = LegCache.createLegCache(10);
+        var end = new LngLat(APPLETON.lng(), APPLETON.lat() + 0.002);
+        var odd = List.of(Direction.values());
+        var even = List.of(Direction.NNW, Direction.NNW, Direction.N, Direction.WSW);
+        cache.put(LegCache.Planner.LATTICE, INDEX, APPLETON, end, odd.subList(0, 15));
+        cache.put(LegCache.Planner.STEERED, INDEX, end, APPLETON, even);
+        cache.put(LegCache.Planner.STEERED, INDEX, end, end, List.of());
+        cache.write(path);
+
+        var loaded = LegCache.read(path, 10);
+        assertNotNull(loaded);
+        assertEquals(3, loaded.size());
+        assertEquals(odd.subList(0, 15), loaded.get(LegCache.Planner.LATTICE, INDEX, APPLETON, end));
+        assertEquals(even, loaded.get(LegCache.Planner.STEERED, INDEX, end, APPLETON));
+        assertEquals(List.of(), loaded.get(LegCache.Planner.STEERED, INDEX, end, end));
+    }
+
+    @Test
+    public void damagedFileIsIgnored() throws IOException {
+        var path = folder.getRoot().toPath().resolve("legs.bin");
+        assertNull(LegCache.read(path, 10));
+        var cache = LegCache.createLegCache(10);
+        cache.put(LegCache.Planner.STEERED, INDEX, APPLETON, APPLETON, List.of(Direction.E, Direction.W));
+        cache.write(path);
+        var bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+        assertNull(LegCache.read(path, 10));
+        assertEquals(0, LegCache.loadOrCreate(path, 10).size());
+    }
+
+    @Test
+    public void hugeMoveCountIsRejected() throws IOException {
+        var path = folder.getRoot().toPath().resolve("legs.bin");
+        var cache = LegCache.createLegCache(10);
+        cache.put(LegCache.Planner.STEERED, INDEX, APPLETON, APPLETON, List.of(Direction.E, Direction.W));
+        cache.write(path);
+        // The move count follows the header, the planner, the content hash and the four coordinates.
+        var bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        bytes.putInt(Integer.BYTES * 4 + 1 + Long.BYTES + Double.BYTES * 4, Integer.MAX_VALUE);
+        Files.write(path, bytes.array());
+        assertNull(LegCache.read(path, 10));
+        assertEquals(0, LegCache.loadOrCreate(path, 10).size());
+    }
+
+    @Test
+    public void fileFromOtherPlannersIsIgnored() throws IOException {
+        var path = folder.getRoot().toPath().resolve("legs.bin");
+        var cache = LegCache.createLegCache(10);
+        cache.put(LegCache.Planner.STEERED, INDEX, APPLETON, APPLETON, List.of(Direction.E, Direction.W));
+        cache.write(path);
+        var bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        assertEquals(LegCache.PLANNER_VERSION, bytes.getInt(Integer.BYTES * 2));
+        bytes.putInt(Integer.BYTES * 2, LegCache.PLANNER_VERSION + 1);
+        Files.write(path, bytes.array());
+        assertNull(LegCache.read(path, 10));
+    }
+
+    @Test
+    public void failedWriteLeavesNoTemporaryFile() throws IOException {
+        // A non-empty directory cannot be replaced, so moving the cache into place fails.
+        var path = folder.newFolder("legs.bin").toPath();
+        Files.createFile(path.resolve("occupied"));
+        try {
+            LegCache.createLegCache(10).write(path);
+            fail("Expected the cache to be rejected.");
+        } catch (IOException e) {
+            try (var files = Files.list(folder.getRoot().toPath())) {
+                assertEquals(List.of(path), files.toList());
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package uk.ac.ed.inf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+public class LocalRestServerTest {
+    private static final String DATE = "2023-04-01";
+    private final ScenarioGenerator scenario = ScenarioGenerator.createScenarioGenerator(13, 120, 60, 2000);
+    private LocalRestServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalRestServer.createLocalRestServer(scenario, 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void clientReadsEveryEndpoint() {
+        var client = Client.createClient(DATE, server.getBaseURL());
+        var restaurants = client.getResponse("restaurants", Restaurant[].class);
+        assertEquals(120, restaurants.length);
+        assertEquals(scenario.getRestaurants().get(0).coord(), restaurants[0].coord());
+        assertEquals(60, client.getResponse("noFlyZones", Polygon[].class).length);
+        assertEquals(4, client.getResponse("centralArea", LngLat[].class).length);
+        var orders = client.getResponse("orders", Order[].class);
+        assertEquals(2000, orders.length);
+        assertEquals(orders[0].orderNo(), client.getResponse("orders", Order[].class)[0].orderNo());
+    }
+
+    private int getStatus(String path) throws IOException {
+        var connection = (HttpURLConnection) new URL(server.getBaseURL() + path).openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void unknownEndpointsAndBadDatesAreRejected() throws IOException {
+        assertEquals(404, getStatus("menus"));
+        assertEquals(400, getStatus("orders/2023-13-01"));
+        assertEquals(200, getStatus("orders/" + DATE));
+    }
+}
@@ -0,0 +1,147 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MoveKernelTest {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+    private static final NoFlyZoneIndex INDEX =
+            NoFlyZoneIndex.createNoFlyZoneIndex(ScenarioGenerator.generateNoFlyZones(6, 6, 173));
+
+    @Test
+    public void stepsMatchTrigonometry() {
+        for (var d : Direction.values()) {
+            var rad = d.getAngle() * (Math.PI / 180.0);
+            var next = APPLETON.nextPosition(d);
+            assertEquals(APPLETON.lng() + 0.00015 * Math.cos(rad), next.lng(), 0.0);
+            assertEquals(APPLETON.lat() + 0.00015 * Math.sin(rad), next.lat(), 0.0);
+        }
+    }
+
+    @Test
+    public void oppositeDirectionsUndoEachOther() {
+        for (var d : Direction.values()) {
+            var opposite = Direction.reverseDirection(d);
+            assertEquals((d.getAngle() + 180) % 360, opposite.getAngle(), 0.0);
+            assertEquals(d, Direction.reverseDirection(opposite));
+        }
+    }
+
+    @Test
+    public void primitiveLineTestMatchesLngLatLineTest() {
+        var random = new Random(179);
+        for (int i = 0; i < 20000; i++) {
+            var start = new LngLat(APPLETON.lng() + (random.nextDouble() - 0.5) * 0.006,
+                    APPLETON.lat() + (random.nextDouble() - 0.5) * 0.006);
+            var end = start.nextPosition(Direction.values()[random.nextInt(16)]);
+            var expected = INDEX.getNoFlyZones().stream().anyMatch(nfz -> nfz.isLineIntersectingNfz(start, end));
+            assertEquals(expected, INDEX.isLineIntersectingNfz(start.lng(), start.lat(), end.lng(), end.lat()));
+        }
+    }
+
+    @Test
+    public void bestDirectionMatchesScanOverLngLat() {
+        var kernel = MoveKernel.createMoveKernel(INDEX);
+        var random = new Random(181);
+        var destination = new LngLat(APPLETON.lng() + 0.002, APPLETON.lat() - 0.0015);
+        for (int i = 0; i < 2000; i++) {
+            var coord = new LngLat(APPLETON.lng() + (random.nextDouble() - 0.5) * 0.006,
+                    APPLETON.lat() + (random.nextDouble() - 0.5) * 0.006);
+            Direction expected = null;
+            var minDist = Double.POSITIVE_INFINITY;
+            for (var d : Direction.values()) {
+                var next = coord.nextPosition(d);
+                if (!INDEX.isLineIntersectingNfz(coord, next) && next.distanceTo(destination) < minDist) {
+                    expected = d;
+                    minDist = next.distanceTo(destination);
+                }
+            }
+            kernel.moveTo(coord);
+            assertEquals(expected, kernel.findBestDirection(destination.lng(), destination.lat()));
+        }
+    }
+
+    @Test
+    public void certifiedLegsFollowTestedMoves() {
+        var random = new Random(191);
+        var kernel = MoveKernel.createMoveKernel(INDEX);
+        for (int i = 0; i < 300; i++) {
+            var coord = new LngLat(APPLETON.lng() + (random.nextDouble() - 0.5) * 0.008,
+                    APPLETON.lat() + (random.nextDouble() - 0.5) * 0.008);
+            var destination = new LngLat(APPLETON.lng() + (random.nextDouble() - 0.5) * 0.008,
+                    APPLETON.lat() + (random.nextDouble() - 0.5) * 0.008);
+            kernel.moveTo(coord);
+            for (int moves = 0; moves < 200 && !coord.closeTo(destination); moves++) {
+                Direction expected = null;
+                var minDist = Double.POSITIVE_INFINITY;
+                for (var d : Direction.values()) {
+                    var next = coord.nextPosition(d);
+                    if (!INDEX.isLineIntersectingNfz(coord, next) && next.distanceTo(destination) < minDist) {
+                        expected = d;
+                        minDist = next.distanceTo(destination);
+                    }
+                }
+                assertEquals(expected, kernel.findBestDirection(destination.lng(), destination.lat()));
+                kernel.step(expected);
+                coord = expected == null ? coord : coord.nextPosition(expected);
+            }
+        }
+        assertTrue(kernel.getCorridorQueries() > 0);
+        assertTrue(kernel.getUntestedMoves() > 0);
+    }
+
+    @Test
+    public void clearCorridorCertifiesTheMiddleOfTheLeg() {
+        var kernel = MoveKernel.createMoveKernel(NoFlyZoneIndex.createNoFlyZoneIndex(List.of()));
+        var destination = new LngLat(APPLETON.lng() + 0.003, APPLETON.lat() + 0.001);
+        kernel.moveTo(APPLETON);
+        while (!kernel.isCloseTo(destination.lng(), destination.lat())) {
+            kernel.step(kernel.findBestDirection(destination.lng(), destination.lat()));
+        }
+        assertEquals(1, kernel.getCorridorQueries());
+        assertTrue(kernel.getUntestedMoves() > 3 * kernel.getTestedMoves());
+    }
+
+    @Test
+    public void bestCandidateIsEvaluatedFirst() {
+        var pathFinder = new PathFinder();
+        var destination = new LngLat(APPLETON.lng() - 0.0025, APPLETON.lat() + 0.0018);
+        var moves = pathFinder.travel(APPLETON, List.of(destination), "", NoFlyZoneIndex.createNoFlyZoneIndex(null));
+        assertTrue(moves.size() > 20);
+        assertEquals(1.0, pathFinder.getCandidatesPerMove(), 0.0);
+
+        pathFinder = new PathFinder();
+        pathFinder.travel(APPLETON, List.of(destination), "", INDEX);
+        assertTrue(pathFinder.getCandidatesPerMove() >= 1.0);
+        assertTrue(pathFinder.getCandidatesPerMove() < 2.0);
+    }
+
+    @Test
+    public void choosingMovesDoesNotAllocate() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var kernel = MoveKernel.createMoveKernel(INDEX);
+        var destination = new LngLat(APPLETON.lng() + 0.002, APPLETON.lat() - 0.0015);
+        double destLng = destination.lng();
+        double destLat = destination.lat();
+        kernel.moveTo(APPLETON);
+        kernel.findBestDirection(destLng, destLat);
+        var before = threads.getCurrentThreadAllocatedBytes();
+        var steps = 0;
+        for (int i = 0; i < 10000; i++) {
+            kernel.moveTo(APPLETON);
+            while (!kernel.isCloseTo(destLng, destLat)) {
+                kernel.step(kernel.findBestDirection(destLng, destLat));
+                steps++;
+            }
+        }
+        var allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(steps > 10000);
+        // Even a single small object per move would add up to far more than this.
+        assertTrue("Allocated " + allocated + " bytes", allocated < steps);
+    }
+}
@@ -0,0 +1,89 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MoveLogTest {
+    private static List<Move> randomMoves(int count, long seed) {
+        var random = new Random(seed);
+        var directions = Direction.values();
+        List<Move> moves = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            var direction = random.nextInt(8) == 0 ? null : directions[random.nextInt(directions.length)];
+            moves.add(new Move(new LngLat(-3.19 + random.nextDouble() * 0.01, 55.94 + random.nextDouble() * 0.01),
+                    direction, "ORDER" + random.nextInt(20), random.nextLong()));
+        }
+        return moves;
+    }
+
+    private static void assertLogHolds(List<Move> expected, MoveLog log) {
+        assertEquals(expected.size(), log.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).coordinates(), log.getMove(i).coordinates());
+            assertEquals(expected.get(i).direction(), log.getDirection(i));
+            assertEquals(expected.get(i).orderNo(), log.getOrderNo(i));
+            assertEquals(expected.get(i).tick(), log.getTick(i));
+        }
+    }
+
+    @Test
+    public void logGrowsAndKeepsEveryMove() {
+        var moves = randomMoves(5000, 401);
+        var heap = MoveLog.createMoveLog();
+        var offHeap = MoveLog.createOffHeapMoveLog();
+        for (var move : moves) {
+            heap.append(move);
+            offHeap.append(move);
+        }
+        assertFalse(heap.isOffHeap());
+        assertTrue(offHeap.isOffHeap());
+        assertLogHolds(moves, heap);
+        assertLogHolds(moves, offHeap);
+        assertTrue(heap.getOrderNumbers().size() <= 20);
+        assertEquals(heap.getOrderNumbers(), offHeap.getOrderNumbers());
+    }
+
+    @Test
+    public void flightsAreAppendedWithTheirOrderAndTick() {
+        var route = Route.createRoute(randomMoves(300, 409));
+        var log = MoveLog.createMoveLog();
+        log.append(new Flight(route, "AAAA0001", 10));
+        log.append(new Flight(route, "AAAA0002", 20));
+        log.append(new Flight(route, "AAAA0001", 30));
+        assertEquals(900, log.size());
+        assertEquals(List.of("AAAA0001", "AAAA0002"), log.getOrderNumbers());
+        for (int i = 0; i < log.size(); i++) {
+            var m = i % route.size();
+            assertEquals(route.getCoordinates(m).lng(), log.getLng(i), 0.0);
+            assertEquals(route.getCoordinates(m).lat(), log.getLat(i), 0.0);
+            assertEquals(route.getDirection(m), log.getDirection(i));
+            assertEquals(i / route.size() == 1 ? 1 : 0, log.getOrderIndex(i));
+            assertEquals(10L * (i / route.size() + 1), log.getTick(i));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void readingPastTheEndFails() {
+        var log = MoveLog.createMoveLog();
+        log.append(new Move(LngLat.createAppletonLngLat(), null, "AAAA0001", 0));
+        log.getLng(1);
+    }
+
+    @Test
+    public void capacityGrowsUpToTheLargestColumn() {
+        assertEquals(2048, MoveLog.grownCapacity(1024, 1025));
+        assertEquals(5000, MoveLog.grownCapacity(1024, 5000));
+        // Doubling would overflow the bytes of a column, so the capacity stops at the largest one.
+        assertEquals(MoveLog.MAX_CAPACITY, MoveLog.grownCapacity(MoveLog.MAX_CAPACITY / 2 + 1, MoveLog.MAX_CAPACITY));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void tooManyMovesFail() {
+        MoveLog.grownCapacity(MoveLog.MAX_CAPACITY, MoveLog.MAX_CAPACITY + 1L);
+    }
+}
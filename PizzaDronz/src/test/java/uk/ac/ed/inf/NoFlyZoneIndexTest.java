@@ -0,0 +1,90 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NoFlyZoneIndexTest {
+    private static final List<Polygon> NO_FLY_ZONES = ScenarioGenerator.generateNoFlyZones(8, 7, 37);
+    private static final NoFlyZoneIndex INDEX = NoFlyZoneIndex.createNoFlyZoneIndex(NO_FLY_ZONES);
+
+    private static boolean bruteForce(LngLat l1, LngLat l2) {
+        return NO_FLY_ZONES.stream().anyMatch(nfz -> nfz.isLineIntersectingNfz(l1, l2));
+    }
+
+    private static LngLat randomPoint(Random random) {
+        var appleton = LngLat.createAppletonLngLat();
+        return new LngLat(appleton.lng() + (random.nextDouble() - 0.5) * 0.01,
+                appleton.lat() + (random.nextDouble() - 0.5) * 0.01);
+    }
+
+    @Test
+    public void emptyIndexNeverIntersects() {
+        var index = NoFlyZoneIndex.createNoFlyZoneIndex(List.of());
+        assertFalse(index.isLineIntersectingNfz(new LngLat(0.0, 0.0), new LngLat(1.0, 1.0)));
+        assertEquals(List.of(), index.getCandidateEdges(new LngLat(0.0, 0.0), new LngLat(1.0, 1.0)));
+    }
+
+    @Test
+    public void indexHoldsEveryEdge() {
+        assertEquals(NO_FLY_ZONES.stream().mapToInt(nfz -> nfz.coordinates().size()).sum(), INDEX.getEdgeCount());
+    }
+
+    @Test
+    public void longSegmentsMatchBruteForce() {
+        var random = new Random(41);
+        for (int i = 0; i < 5000; i++) {
+            var l1 = randomPoint(random);
+            var l2 = randomPoint(random);
+            assertEquals(bruteForce(l1, l2), INDEX.isLineIntersectingNfz(l1, l2));
+        }
+    }
+
+    @Test
+    public void droneStepsMatchBruteForce() {
+        var random = new Random(43);
+        for (int i = 0; i < 20000; i++) {
+            var l1 = randomPoint(random);
+            var l2 = l1.nextPosition(Direction.values()[random.nextInt(16)]);
+            assertEquals(bruteForce(l1, l2), INDEX.isLineIntersectingNfz(l1, l2));
+        }
+    }
+
+    @Test
+    public void axisAlignedSegmentsMatchBruteForce() {
+        var random = new Random(47);
+        for (int i = 0; i < 2000; i++) {
+            var l1 = randomPoint(random);
+            var l2 = randomPoint(random);
+            var horizontal = new LngLat(l2.lng(), l1.lat());
+            var vertical = new LngLat(l1.lng(), l2.lat());
+            assertEquals(bruteForce(l1, horizontal), INDEX.isLineIntersectingNfz(l1, horizontal));
+            assertEquals(bruteForce(l1, vertical), INDEX.isLineIntersectingNfz(l1, vertical));
+        }
+    }
+
+    @Test
+    public void candidatesContainEveryIntersectingEdge() {
+        var random = new Random(53);
+        for (int i = 0; i < 500; i++) {
+            var l1 = randomPoint(random);
+            var l2 = randomPoint(random);
+            var candidates = INDEX.getCandidateEdges(l1, l2);
+            for (int e = 0; e < INDEX.getEdgeCount(); e++) {
+                if (Polygon.areLinesIntersectingNonCollinear(l1, l2, INDEX.getEdgeStart(e), INDEX.getEdgeEnd(e))) {
+                    assertTrue(candidates.contains(e));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shortSegmentsOnlyReturnNearbyEdges() {
+        var appleton = LngLat.createAppletonLngLat();
+        var candidates = INDEX.getCandidateEdges(appleton, appleton.nextPosition(Direction.E));
+        assertTrue(candidates.size() < INDEX.getEdgeCount() / 10);
+    }
+}
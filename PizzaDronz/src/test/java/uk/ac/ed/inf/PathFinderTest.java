@@ -0,0 +1,99 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class PathFinderTest {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+    private static final List<Polygon> NO_FLY_ZONES = ScenarioGenerator.generateNoFlyZones(5, 6, 211);
+    private static final NoFlyZoneIndex INDEX = NoFlyZoneIndex.createNoFlyZoneIndex(NO_FLY_ZONES);
+    private static final List<LngLat> RESTAURANTS = ScenarioGenerator.generateRestaurants(5, 12, 223);
+
+    private static void assertSameMoves(List<Move> expected, List<Move> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).coordinates(), actual.get(i).coordinates());
+            assertEquals(expected.get(i).direction(), actual.get(i).direction());
+            assertEquals(expected.get(i).orderNo(), actual.get(i).orderNo());
+        }
+    }
+
+    @Test
+    public void sharedPathFinderGivesTheSameMovesOnManyThreads() throws InterruptedException, ExecutionException {
+        var graph = Graph.createGraph(APPLETON, INDEX, RESTAURANTS);
+        var planner = LatticePlanner.createLatticePlanner(graph);
+        List<List<Move>> steered = new ArrayList<>();
+        List<List<Move>> planned = new ArrayList<>();
+        for (var r : RESTAURANTS) {
+            steered.add(new PathFinder().travel(APPLETON, graph.getPath(APPLETON, r), "S" + r, INDEX));
+            planned.add(new PathFinder().travel(APPLETON, r, "P" + r, planner));
+        }
+
+        var pathFinder = new PathFinder(LegCache.createLegCache(100));
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Move>>> steeredFlights = new ArrayList<>();
+            List<Future<List<Move>>> plannedFlights = new ArrayList<>();
+            for (var r : RESTAURANTS) {
+                steeredFlights.add(executor.submit(() ->
+                        pathFinder.travel(APPLETON, graph.getPath(APPLETON, r), "S" + r, INDEX)));
+                plannedFlights.add(executor.submit(() -> pathFinder.travel(APPLETON, r, "P" + r, planner)));
+            }
+            for (int i = 0; i < RESTAURANTS.size(); i++) {
+                assertSameMoves(steered.get(i), steeredFlights.get(i).get());
+                var plan = plannedFlights.get(i).get();
+                if (planned.get(i) == null) {
+                    assertNull(plan);
+                } else {
+                    assertSameMoves(planned.get(i), plan);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(pathFinder.getEvaluatedCandidates() > 0);
+    }
+
+    @Test
+    public void presetRouteTakesTheNewOrderNumber() {
+        var pathFinder = new PathFinder();
+        var moves = pathFinder.travel(APPLETON, List.of(RESTAURANTS.get(0)), "", INDEX);
+        var preset = pathFinder.travelPresetRoute("ABCD1234", moves);
+        assertEquals(moves.size(), preset.size());
+        for (int i = 0; i < moves.size(); i++) {
+            assertEquals(moves.get(i).coordinates(), preset.get(i).coordinates());
+            assertEquals(moves.get(i).direction(), preset.get(i).direction());
+            assertEquals("ABCD1234", preset.get(i).orderNo());
+        }
+    }
+
+    @Test
+    public void oneWaySteeringGivesUpAfterMaxMoves() {
+        var pathFinder = new PathFinder();
+        var r = RESTAURANTS.get(0);
+        var moves = pathFinder.travelOneWay(APPLETON, r, INDEX, Integer.MAX_VALUE);
+        assertFalse(moves.isEmpty());
+        assertSameMoves(moves, pathFinder.travelOneWay(APPLETON, r, INDEX, moves.size()));
+        assertNull(pathFinder.travelOneWay(APPLETON, r, INDEX, moves.size() - 1));
+    }
+
+    @Test
+    public void cachedLegIsBoundByMaxMoves() {
+        var legCache = LegCache.createLegCache(100);
+        var pathFinder = new PathFinder(legCache);
+        var r = RESTAURANTS.get(0);
+        var moves = pathFinder.travelOneWay(APPLETON, r, INDEX, Integer.MAX_VALUE);
+        assertEquals(1, legCache.size());
+        assertNull(pathFinder.travelOneWay(APPLETON, r, INDEX, moves.size() - 1));
+        assertEquals(1, legCache.getHits());
+        assertSameMoves(moves, pathFinder.travelOneWay(APPLETON, r, INDEX, moves.size()));
+        assertEquals(2, legCache.getHits());
+    }
+}
@@ -0,0 +1,79 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PathSmootherTest {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+
+    /**
+     * This method creates a square no-fly zone east of Appleton Tower whose top-left corner is rounded off by a few
+     * close vertices, like the corners of the real no-fly zones.
+     */
+    private static Polygon createRoundedZone() {
+        double x = APPLETON.lng() + 0.001, y = APPLETON.lat() - 0.0016, size = 0.002, radius = 0.0005;
+        List<LngLat> coordinates = new ArrayList<>();
+        coordinates.add(new LngLat(x, y));
+        coordinates.add(new LngLat(x + size, y));
+        coordinates.add(new LngLat(x + size, y + size));
+        for (int i = 0; i <= 4; i++) {
+            var angle = Math.PI / 2 + Math.PI / 2 * i / 4;
+            coordinates.add(new LngLat(x + radius + radius * Math.cos(angle),
+                    y + size - radius + radius * Math.sin(angle)));
+        }
+        coordinates.add(new LngLat(x, y));
+        return new Polygon(coordinates);
+    }
+
+    private static int countMoves(List<LngLat> nodePath, NoFlyZoneIndex index) {
+        return new PathFinder().travel(APPLETON, nodePath, "1", index).size();
+    }
+
+    @Test
+    public void smoothingSavesMovesAroundRoundedCorner() {
+        var index = NoFlyZoneIndex.createNoFlyZoneIndex(List.of(createRoundedZone()));
+        var restaurant = new LngLat(APPLETON.lng() + 0.0035, APPLETON.lat());
+        var graph = Graph.createGraph(APPLETON, index, List.of(restaurant));
+        var nodePath = graph.getPath(APPLETON, restaurant);
+        var smoothed = PathSmoother.createPathSmoother(index).smooth(APPLETON, nodePath);
+        assertEquals(countMoves(nodePath, index), smoothed.originalMoves());
+        assertEquals(countMoves(smoothed.nodePath(), index), smoothed.smoothedMoves());
+        assertTrue(smoothed.getMovesSaved() > 0);
+        assertEquals(restaurant, smoothed.nodePath().get(smoothed.nodePath().size() - 1));
+    }
+
+    @Test
+    public void smoothingNeverCostsMoves() {
+        var noFlyZones = ScenarioGenerator.generateNoFlyZones(4, 6, 157);
+        var index = NoFlyZoneIndex.createNoFlyZoneIndex(noFlyZones);
+        var restaurants = ScenarioGenerator.generateRestaurants(4, 10, 163);
+        var graph = Graph.createGraph(APPLETON, index, restaurants);
+        var smoother = PathSmoother.createPathSmoother(index);
+        for (var r : restaurants) {
+            var nodePath = graph.getPath(APPLETON, r);
+            var smoothed = smoother.smooth(APPLETON, nodePath);
+            assertTrue(smoothed.getMovesSaved() >= 0);
+            var moves = new PathFinder().travel(APPLETON, smoothed.nodePath(), "1", index);
+            assertEquals(smoothed.smoothedMoves(), moves.size());
+            for (var move : moves) {
+                var next = move.coordinates().nextPosition(move.direction());
+                assertFalse(index.isLineIntersectingNfz(move.coordinates(), next));
+            }
+            var hover = moves.get(moves.size() / 2 - 1);
+            assertNull(hover.direction());
+            assertTrue(hover.coordinates().closeTo(r));
+        }
+    }
+
+    @Test
+    public void emptyPathIsUnchanged() {
+        var index = NoFlyZoneIndex.createNoFlyZoneIndex(List.of());
+        var smoothed = PathSmoother.createPathSmoother(index).smooth(APPLETON, List.of());
+        assertEquals(List.of(), smoothed.nodePath());
+        assertEquals(0, smoothed.getMovesSaved());
+    }
+}
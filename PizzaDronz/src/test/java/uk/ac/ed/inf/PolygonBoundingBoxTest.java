@@ -0,0 +1,105 @@
+package uk.ac.ed.inf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PolygonBoundingBoxTest {
+
+    Polygon square;
+
+    @Before
+    public void initialiseSquare() {
+        square = Polygon.fromLngLat(List.of(new LngLat(0.0, 0.0), new LngLat(0.0, 1.0),
+                new LngLat(1.0, 1.0), new LngLat(1.0, 0.0)));
+    }
+
+    @Test
+    public void boundingBoxIsCalculatedOnCreation() {
+        assertEquals(0.0, square.getMinLng(), 0.0);
+        assertEquals(0.0, square.getMinLat(), 0.0);
+        assertEquals(1.0, square.getMaxLng(), 0.0);
+        assertEquals(1.0, square.getMaxLat(), 0.0);
+    }
+
+    @Test
+    public void deserializedPolygonHasBoundingBox() throws Exception {
+        var json = "{\"name\": \"Test\", \"coordinates\": [[-3.19, 55.94], [-3.18, 55.94], [-3.18, 55.95]]}";
+        var polygon = new com.fasterxml.jackson.databind.ObjectMapper().readValue(json, Polygon.class);
+        assertEquals(-3.19, polygon.getMinLng(), 0.0);
+        assertEquals(55.95, polygon.getMaxLat(), 0.0);
+    }
+
+    @Test
+    public void changingTheGivenListDoesNotChangeThePolygon() {
+        var vertices = new ArrayList<>(square.coordinates());
+        var polygon = Polygon.fromLngLat(vertices);
+        vertices.set(2, new LngLat(5.0, 5.0));
+        assertEquals(1.0, polygon.getMaxLng(), 0.0);
+        assertEquals(square.coordinates(), polygon.coordinates());
+        assertFalse(polygon.isInsidePolygon(new LngLat(2.0, 2.0), true));
+    }
+
+    @Test
+    public void farPointIsRejectedByBoundingBox() {
+        assertFalse(square.isInsidePolygon(new LngLat(5.0, 0.5), true));
+        assertFalse(square.isInsidePolygon(new LngLat(-5.0, 0.5), false));
+        assertEquals(2, square.getInsideChecks());
+        assertEquals(2, square.getInsideRejects());
+    }
+
+    @Test
+    public void nearPointIsNotRejected() {
+        assertTrue(square.isInsidePolygon(new LngLat(0.5, 0.5), true));
+        assertTrue(square.isInsidePolygon(new LngLat(1.0, 0.5), false));
+        assertEquals(2, square.getInsideChecks());
+        assertEquals(0, square.getInsideRejects());
+    }
+
+    @Test
+    public void farLineIsRejectedByBoundingBox() {
+        assertFalse(square.isLineIntersectingNfz(new LngLat(2.0, 2.0), new LngLat(3.0, -1.0)));
+        assertTrue(square.isLineIntersectingNfz(new LngLat(-1.0, 0.5), new LngLat(2.0, 0.5)));
+        assertEquals(2, square.getLineChecks());
+        assertEquals(1, square.getLineRejects());
+    }
+
+    @Test
+    public void countersCanBeReset() {
+        square.isLineIntersectingNfz(new LngLat(2.0, 2.0), new LngLat(3.0, -1.0));
+        square.resetCounters();
+        assertEquals(0, square.getLineChecks());
+        assertEquals(0, square.getLineRejects());
+    }
+
+    @Test
+    public void rejectPathNeverChangesLineResult() {
+        var random = new Random(59);
+        var nfz = ScenarioGenerator.generateNoFlyZones(4, 9, 61).get(0);
+        for (int i = 0; i < 10000; i++) {
+            var l1 = new LngLat(nfz.getMinLng() + (random.nextDouble() - 0.5) * 0.002,
+                    nfz.getMinLat() + (random.nextDouble() - 0.5) * 0.002);
+            var l2 = l1.nextPosition(Direction.values()[random.nextInt(16)]);
+            var expected = false;
+            var n = nfz.coordinates().size();
+            for (int e = 0; e < n; e++) {
+                expected |= Polygon.areLinesIntersectingNonCollinear(l1, l2, nfz.coordinates().get(e),
+                        nfz.coordinates().get((e + 1) % n));
+            }
+            assertEquals(expected, nfz.isLineIntersectingNfz(l1, l2));
+        }
+        assertTrue(nfz.getLineRejects() > 0);
+    }
+
+    @Test
+    public void polygonsWithSameVerticesAreEqual() {
+        var copy = Polygon.fromLngLat(List.copyOf(square.coordinates()));
+        assertEquals(square, copy);
+        assertEquals(square.hashCode(), copy.hashCode());
+    }
+}
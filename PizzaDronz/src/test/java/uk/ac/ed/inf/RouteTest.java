@@ -0,0 +1,56 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RouteTest {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+    private static final NoFlyZoneIndex INDEX =
+            NoFlyZoneIndex.createNoFlyZoneIndex(ScenarioGenerator.generateNoFlyZones(4, 5, 307));
+    private static final List<LngLat> RESTAURANTS = ScenarioGenerator.generateRestaurants(4, 3, 311);
+
+    @Test
+    public void flightsShareTheRouteAndGiveTheSameMovesAsACopy() {
+        var pathFinder = new PathFinder();
+        var moves = pathFinder.travel(APPLETON, List.of(RESTAURANTS.get(0)), "", INDEX);
+        var route = Route.createRoute(moves);
+        var first = pathFinder.travelPresetRoute("AAAA0001", route);
+        var second = pathFinder.travelPresetRoute("AAAA0002", route);
+        assertSame(first.route(), second.route());
+
+        var copied = pathFinder.travelPresetRoute("AAAA0002", moves);
+        assertEquals(copied.size(), second.size());
+        for (int i = 0; i < copied.size(); i++) {
+            var move = second.getMove(i);
+            assertEquals(copied.get(i).coordinates(), move.coordinates());
+            assertEquals(copied.get(i).direction(), move.direction());
+            assertEquals("AAAA0002", move.orderNo());
+        }
+    }
+
+    @Test
+    public void followingAFlightMatchesFollowingItsMoves() {
+        var pathFinder = new PathFinder();
+        var moves = pathFinder.travel(APPLETON, List.of(RESTAURANTS.get(1)), "", INDEX);
+        var flight = pathFinder.travelPresetRoute("BBBB0001", Route.createRoute(moves));
+
+        var byMoves = Drone.createDrone(APPLETON);
+        byMoves.followPath("BBBB0001", moves);
+        var byFlight = Drone.createDrone(APPLETON);
+        byFlight.followFlight(flight);
+        assertEquals(byMoves.getCurrCoord(), byFlight.getCurrCoord());
+        assertTrue(byFlight.hasEnoughBattery(2000 - moves.size()));
+        assertFalse(byFlight.hasEnoughBattery(2000 - moves.size() + 1));
+        assertTrue(byFlight.getPath().isEmpty());
+    }
+
+    @Test
+    public void emptyRouteHasNoEnd() {
+        var route = Route.createRoute(List.of());
+        assertEquals(0, route.size());
+        assertNull(route.getEnd());
+    }
+}
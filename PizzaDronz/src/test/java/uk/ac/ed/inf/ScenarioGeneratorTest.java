@@ -0,0 +1,113 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScenarioGeneratorTest {
+    private static final String DATE = "2023-04-01";
+
+    private static byte[] writeOrders(ScenarioGenerator scenario, String date) throws IOException {
+        var out = new ByteArrayOutputStream();
+        scenario.writeOrders(date, out);
+        return out.toByteArray();
+    }
+
+    private static List<ValidatedOrder> validate(ScenarioGenerator scenario) throws IOException {
+        var out = new ByteArrayOutputStream();
+        scenario.writeRestaurants(out);
+        var restaurants = List.of(new ObjectMapper().readValue(out.toByteArray(), Restaurant[].class));
+        var orders = new ObjectMapper().readValue(writeOrders(scenario, DATE), Order[].class);
+        return List.of(orders).stream().map(order -> OrderChecker.validateOrder(restaurants, order)).toList();
+    }
+
+    @Test
+    public void sameSeedGivesSameScenario() throws IOException {
+        var first = ScenarioGenerator.createScenarioGenerator(7, 40, 20, 200);
+        var second = ScenarioGenerator.createScenarioGenerator(7, 40, 20, 200);
+        assertArrayEquals(writeOrders(first, DATE), writeOrders(second, DATE));
+        assertEquals(first.getNoFlyZones(), second.getNoFlyZones());
+        assertFalse(java.util.Arrays.equals(writeOrders(first, DATE), writeOrders(first, "2023-04-02")));
+    }
+
+    @Test
+    public void restaurantsAreOutsideSeparateNoFlyZones() {
+        var scenario = ScenarioGenerator.createScenarioGenerator(11, 500, 200, 0);
+        var zones = scenario.getNoFlyZones().stream().map(Polygon::fromLngLat).toList();
+        assertEquals(200, zones.size());
+        assertEquals(500, new HashSet<>(scenario.getRestaurants()).size());
+        for (var restaurant : scenario.getRestaurants()) {
+            for (var zone : zones) {
+                assertFalse(zone.isInsidePolygon(restaurant.coord(), true));
+            }
+        }
+        for (var zone : zones) {
+            for (var other : zones) {
+                if (zone != other) {
+                    assertFalse(other.isInsidePolygon(zone.coordinates().get(0), true));
+                }
+            }
+            assertFalse(zone.isInsidePolygon(LngLat.createAppletonLngLat(), true));
+        }
+    }
+
+    @Test
+    public void validOrdersPassEveryCheck() throws IOException {
+        var scenario = ScenarioGenerator.createScenarioGenerator(3, 30, 10, 300, 0.0);
+        for (var validatedOrder : validate(scenario)) {
+            assertEquals(OrderOutcome.VALID_BUT_NOT_DELIVERED, validatedOrder.getOrderOutcome());
+        }
+    }
+
+    @Test
+    public void invalidOrdersCoverEveryCheck() throws IOException {
+        var scenario = ScenarioGenerator.createScenarioGenerator(5, 30, 10, 400, 1.0);
+        var outcomes = EnumSet.noneOf(OrderOutcome.class);
+        validate(scenario).forEach(validatedOrder -> outcomes.add(validatedOrder.getOrderOutcome()));
+        assertEquals(EnumSet.range(OrderOutcome.INVALID_CARD_NUMBER, OrderOutcome.INVALID_ORDER_NUMBER), outcomes);
+    }
+
+    @Test
+    public void singleRestaurantOrdersAreAllInvalid() throws IOException {
+        // An order from more than one restaurant cannot be made with only one, so that defect is never drawn.
+        var scenario = ScenarioGenerator.createScenarioGenerator(13, 1, 5, 400, 1.0);
+        for (var validatedOrder : validate(scenario)) {
+            assertNotEquals(OrderOutcome.VALID_BUT_NOT_DELIVERED, validatedOrder.getOrderOutcome());
+        }
+    }
+
+    @Test
+    public void orderNumbersAreUnique() throws IOException {
+        var scenario = ScenarioGenerator.createScenarioGenerator(9, 10, 0, 5000, 0.0);
+        var orders = new ObjectMapper().readValue(writeOrders(scenario, DATE), Order[].class);
+        assertEquals(5000, List.of(orders).stream().map(Order::orderNo).distinct().count());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scenarioNeedsRestaurants() {
+        ScenarioGenerator.createScenarioGenerator(1, 0, 10, 10);
+    }
+
+    @Test
+    public void generatedGridLeavesAppletonAndRestaurantsOutsideNoFlyZones() {
+        var zones = ScenarioGenerator.generateNoFlyZones(6, 7, 3);
+        assertEquals(32, zones.size());
+        assertEquals(zones, ScenarioGenerator.generateNoFlyZones(6, 7, 3));
+        var restaurants = ScenarioGenerator.generateRestaurants(6, 30, 5);
+        assertEquals(30, restaurants.size());
+        for (var zone : zones) {
+            assertEquals(7, zone.coordinates().size());
+            assertFalse(zone.isInsidePolygon(LngLat.createAppletonLngLat(), true));
+            for (var restaurant : restaurants) {
+                assertFalse(zone.isInsidePolygon(restaurant, true));
+            }
+        }
+    }
+}
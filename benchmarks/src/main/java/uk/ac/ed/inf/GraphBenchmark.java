@@ -0,0 +1,55 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks building the visibility graph and searching it for the path to each restaurant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+
+    // Side of the grid of no-fly zones, see ScenarioGenerator.generateNoFlyZones: 12, 32 and 96 no-fly zones.
+    @Param({"4", "6", "10"})
+    public int gridSize;
+
+    @Param({"6", "24"})
+    public int vertices;
+
+    @Param({"5", "20"})
+    public int restaurants;
+
+    private List<Polygon> noFlyZones;
+    private List<LngLat> restaurantCoords;
+    private NoFlyZoneIndex index;
+    private Graph graph;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        noFlyZones = ScenarioGenerator.generateNoFlyZones(gridSize, vertices, 42);
+        restaurantCoords = ScenarioGenerator.generateRestaurants(gridSize, restaurants, 43);
+        index = NoFlyZoneIndex.createNoFlyZoneIndex(noFlyZones);
+        graph = Graph.createGraph(APPLETON, index, restaurantCoords);
+    }
+
+    @Benchmark
+    public Graph createGraph() {
+        return Graph.createGraph(APPLETON, noFlyZones, restaurantCoords);
+    }
+
+    @Benchmark
+    public void getPath(Blackhole blackhole) {
+        for (var restaurant : restaurantCoords) {
+            blackhole.consume(graph.getPath(APPLETON, restaurant));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks turning the path to each restaurant into the moves of the drone there and back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathFinderBenchmark {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+
+    // Side of the grid of no-fly zones, see ScenarioGenerator.generateNoFlyZones: 12, 32 and 96 no-fly zones.
+    @Param({"4", "6", "10"})
+    public int gridSize;
+
+    @Param({"6", "24"})
+    public int vertices;
+
+    @Param({"5", "20"})
+    public int restaurants;
+
+    private List<Polygon> noFlyZones;
+    private List<LngLat> restaurantCoords;
+    private NoFlyZoneIndex index;
+    private List<List<LngLat>> nodePaths;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        noFlyZones = ScenarioGenerator.generateNoFlyZones(gridSize, vertices, 42);
+        restaurantCoords = ScenarioGenerator.generateRestaurants(gridSize, restaurants, 43);
+        index = NoFlyZoneIndex.createNoFlyZoneIndex(noFlyZones);
+        var graph = Graph.createGraph(APPLETON, index, restaurantCoords);
+        nodePaths = new ArrayList<>();
+        for (var restaurant : restaurantCoords) {
+            var nodePath = graph.getPath(APPLETON, restaurant);
+            if (nodePath != null) {
+                nodePaths.add(nodePath);
+            }
+        }
+    }
+
+    @Benchmark
+    public void travel(Blackhole blackhole) {
+        var pathFinder = new PathFinder();
+        for (var nodePath : nodePaths) {
+            blackhole.consume(pathFinder.travel(APPLETON, nodePath, "", index));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the geometry tests against the no-fly zones, one point or one move at a time.
+ * The points and moves are drawn from a fixed set spread over the map, and each call takes the next one, so that the
+ * answers are not the same every time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolygonBenchmark {
+    private static final LngLat APPLETON = LngLat.createAppletonLngLat();
+    // Width of a grid cell, in degrees.
+    private static final double CELL = 0.001;
+    private static final int SAMPLES = 1024;
+
+    // Side of the grid of no-fly zones, see ScenarioGenerator.generateNoFlyZones: 12, 32 and 96 no-fly zones.
+    @Param({"4", "6", "10"})
+    public int gridSize;
+
+    @Param({"6", "24"})
+    public int vertices;
+
+    private Polygon[] polygons;
+    private NoFlyZoneIndex index;
+    private LngLat[] points;
+    private LngLat[] ends;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var noFlyZones = ScenarioGenerator.generateNoFlyZones(gridSize, vertices, 42);
+        polygons = noFlyZones.toArray(new Polygon[0]);
+        index = NoFlyZoneIndex.createNoFlyZoneIndex(noFlyZones);
+        // Random points spread over the grid, and the end of a move from each of them.
+        var random = new Random(7);
+        points = new LngLat[SAMPLES];
+        ends = new LngLat[SAMPLES];
+        var directions = Direction.values();
+        for (int i = 0; i < SAMPLES; i++) {
+            points[i] = new LngLat(APPLETON.lng() + CELL * gridSize * (random.nextDouble() - 0.5),
+                    APPLETON.lat() + CELL * gridSize * (random.nextDouble() - 0.5));
+            ends[i] = points[i].nextPosition(directions[i % directions.length]);
+        }
+    }
+
+    @Benchmark
+    public boolean isInsidePolygon() {
+        var i = next++ & (SAMPLES - 1);
+        return polygons[i % polygons.length].isInsidePolygon(points[i], false);
+    }
+
+    @Benchmark
+    public boolean polygonIsLineIntersectingNfz() {
+        var i = next++ & (SAMPLES - 1);
+        return polygons[i % polygons.length].isLineIntersectingNfz(points[i], ends[i]);
+    }
+
+    @Benchmark
+    public boolean indexIsLineIntersectingNfz() {
+        var i = next++ & (SAMPLES - 1);
+        return index.isLineIntersectingNfz(points[i], ends[i]);
+    }
+}